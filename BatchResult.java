@@ -0,0 +1,18 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of a batch call: what went through, and why each failed entry did not
+class BatchResult<T> {
+    private final List<T> succeeded = new ArrayList<>();
+    private final Map<String, String> failures = new LinkedHashMap<>();
+
+    void addSuccess(T item) { succeeded.add(item); }
+    void addFailure(String key, String reason) { failures.put(key, reason); }
+
+    public List<T> getSucceeded() { return Collections.unmodifiableList(succeeded); }
+    public Map<String, String> getFailures() { return Collections.unmodifiableMap(failures); }
+    public boolean hasFailures() { return !failures.isEmpty(); }
+}
@@ -0,0 +1,168 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+// Time and allocation per call for the booking hot paths. Run with
+// java BookingBenchmark [history size]. Not a JMH harness: each case is warmed
+// up for a few rounds and the best of the measured rounds is printed, which is
+// enough to compare builds on one machine but not across machines.
+//
+// Allocation is the bytes the calling thread allocated per call, from the
+// HotSpot thread MXBean; cases that run on other threads report only what
+// the caller allocated.
+class BookingBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int FLEET = 10_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int history = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.printf("%-40s %14s %14s%n", "case", "ns/op", "bytes/op");
+
+        RentalService service = fleet(new RentalService());
+        importHistory(service, history);
+
+        measure("rent + return (in memory)", 20_000, i -> {
+            String carId = "C" + (i % FLEET);
+            service.rentCar(carId, "Customer " + (i % 500), phone(i % 500), 2);
+            service.returnCar(carId);
+        });
+        measure("findActiveRental", 1_000_000, i -> service.findActiveRental("C" + (i % FLEET)));
+        measure("getRentalsByCustomer (page of 20)", 200_000,
+            i -> service.getRentalsByCustomer("CUS" + (1 + i % 500), 0, 20));
+        measure("findRentals text search", 2_000, i -> service.findRentals("ustomer 4" + (i % 10), null, null));
+        measure("getStatistics", 1_000_000, i -> service.getStatistics());
+        List<Car> cars = service.getCars();
+        LocalDate today = LocalDate.now();
+        measure("fleet quote (per car)", 200, i -> service.quote(cars, today, 3), FLEET);
+        measure("single quote", 1_000_000, i -> service.quote("C" + (i % FLEET), today, 3));
+        measure("findFreeCars (cached)", 100_000, i -> service.findFreeCars(today, today.plusDays(7)));
+        Metrics.Operation operation = service.getMetrics().operation("benchmark");
+        measure("Metrics.Operation.record", 1_000_000, i -> operation.record(System.nanoTime()));
+
+        BookingPipeline pipeline = new BookingPipeline(service, "benchmark");
+        measure("pipeline rent + return (round trip)", 10_000, i -> {
+            String carId = "C" + (i % FLEET);
+            pipeline.rentCar(carId, "Customer", phone(1), 2).join();
+            pipeline.returnCar(carId).join();
+        });
+        measure("pipeline rent + return (pipelined)", 10_000, i -> {
+            String carId = "C" + (i % FLEET);
+            CompletableFuture<Rental> rented = pipeline.rentCar(carId, "Customer", phone(1), 2);
+            pipeline.returnCar(carId).join();
+            rented.join();
+        });
+        pipeline.close();
+
+        Path directory = Files.createTempDirectory("booking-benchmark");
+        try {
+            RentalService journaled = fleet(RentalService.open(directory));
+            measure("rent + return (journaled, 1 thread)", 2_000, i -> {
+                String carId = "C" + (i % FLEET);
+                journaled.rentCar(carId, "Customer", phone(1), 2);
+                journaled.returnCar(carId);
+            });
+            concurrent("rent + return (journaled, 8 threads)", journaled, 8, 500);
+            importHistory(journaled, history);
+            long started = System.nanoTime();
+            journaled.checkpoint();
+            long checkpointed = System.nanoTime();
+            journaled.close();
+            long opening = System.nanoTime();
+            RentalService reopened = RentalService.open(directory);
+            long opened = System.nanoTime();
+            System.out.printf("%-40s %14.1f ms%n", "checkpoint (" + reopened.getRentals().size() + " rentals)",
+                (checkpointed - started) / 1e6);
+            System.out.printf("%-40s %14.1f ms%n", "cold start from snapshot", (opened - opening) / 1e6);
+            reopened.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    private static RentalService fleet(RentalService service) {
+        for (int i = 0; i < FLEET; i++) service.addCar("C" + i, "Brand" + (i % 20), "Model" + (i % 50), 1000 + i % 900);
+        return service;
+    }
+
+    // Returned rentals spread over the last year, imported in batches like a bulk import
+    private static void importHistory(RentalService service, int count) {
+        LocalDateTime start = LocalDateTime.now().minusDays(365);
+        List<RentalRecord> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDateTime rented = start.plusMinutes(i * 2L);
+            batch.add(new RentalRecord("C" + (i % FLEET), "Customer " + (i % 500), phone(i % 500), 2, rented,
+                2000, rented.plusDays(2)));
+            if (batch.size() == 10_000 || i == count - 1) {
+                service.importRentals(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static String phone(int customer) {
+        return "97" + String.format("%08d", customer);
+    }
+
+    private static void measure(String name, int operations, IntConsumer body) {
+        measure(name, operations, body, 1);
+    }
+
+    // perCall scales the figures down when one call covers several items
+    private static void measure(String name, int operations, IntConsumer body, int perCall) {
+        long thread = Thread.currentThread().getId();
+        double bestNanos = Double.MAX_VALUE;
+        double bytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+            long started = System.nanoTime();
+            for (int i = 0; i < operations; i++) body.accept(i);
+            long elapsed = System.nanoTime() - started;
+            long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+            if (round < WARMUP_ROUNDS) continue;
+            double nanos = (double) elapsed / operations / perCall;
+            if (nanos < bestNanos) {
+                bestNanos = nanos;
+                bytes = (double) allocated / operations / perCall;
+            }
+        }
+        System.out.printf("%-40s %14.1f %14.1f%n", name, bestNanos, bytes);
+    }
+
+    // Throughput of threads each renting and returning its own slice of the fleet
+    private static void concurrent(String name, RentalService service, int threads, int operations) throws InterruptedException {
+        double best = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            CountDownLatch done = new CountDownLatch(threads);
+            long started = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int slice = t;
+                new Thread(() -> {
+                    for (int i = 0; i < operations; i++) {
+                        String carId = "C" + (slice + threads * (i % (FLEET / threads)));
+                        service.rentCar(carId, "Customer", phone(slice), 2);
+                        service.returnCar(carId);
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            double opsPerSecond = threads * operations * 2 / ((System.nanoTime() - started) / 1e9);
+            if (round >= WARMUP_ROUNDS) best = Math.max(best, opsPerSecond);
+        }
+        System.out.printf("%-40s %14.0f ops/s%n", name, best);
+    }
+}
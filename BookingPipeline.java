@@ -0,0 +1,409 @@
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Commands for one RentalService through a preallocated ring buffer, applied
+// in order by a single writer thread.
+//
+// Producers claim a sequence number with compare-and-set, fill the slot it
+// maps to and publish it; no locks and no per-command queue nodes. The writer
+// takes every contiguous published slot (up to MAX_BATCH) as one batch, runs
+// it inside RentalService.batch so the journal is waited on once for the lot,
+// then completes the callers' futures. A command that fails does not affect
+// the others in its batch. A journal failure does: the batch's changes are
+// applied in memory but not durable, and a failed journal takes no further
+// records, so the pipeline stops there. The batch's futures fail with the
+// journal's exception, and the commands after it are refused unapplied.
+//
+// Projections are fed from the same ring, each on its own thread trailing the
+// writer: they see every successful change in order, a batch at a time, and
+// never hold up the writer unless they fall a whole ring behind. Producers
+// wait (spinning, then yielding, then parking briefly) only when the ring is
+// full. Futures are completed on the writer thread, so callbacks on them must
+// not block on this pipeline.
+class BookingPipeline {
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final int MAX_BATCH = 1024;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+    private static final Logger LOG = Logger.getLogger(BookingPipeline.class.getName());
+
+    // Read-side view fed from the pipeline's events; every method runs on the projection's own thread
+    interface Projection {
+        default void carAdded(Car car) {}
+        default void carRented(Rental rental) {}
+        default void carReturned(Rental rental) {}
+        default void reserved(Reservation reservation) {}
+        // After the last event of a writer batch, so views can refresh once per batch
+        default void batchEnded() {}
+    }
+
+    private enum Kind { ADD_CAR, RENT, RETURN, RESERVE, CUSTOM }
+
+    private static final class Slot {
+        volatile long published = -1;
+        Kind kind;
+        String carId;
+        String brand;
+        String model;
+        double basePricePerDay;
+        String customerName;
+        String phoneNumber;
+        int days;
+        LocalDate start;
+        LocalDate end;
+        Function<RentalService, ?> custom;
+        CompletableFuture<Object> result;
+        Object outcome;
+        RuntimeException failure;
+    }
+
+    // A sequence number padded onto its own cache lines, so the writer's and the
+    // projections' progress do not invalidate each other's line
+    @SuppressWarnings("unused")
+    private static class LeftPadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static class SequenceValue extends LeftPadding {
+        volatile long value = -1;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sequence extends SequenceValue {
+        long p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    private final RentalService service;
+    private final Metrics.Counter projectionFailures;
+    private final Slot[] ring;
+    private final int mask;
+    // Next sequence to hand out; negative once closed, holding -(final count) - 1
+    private final AtomicLong claims = new AtomicLong();
+    // Highest sequence applied by the writer and whose futures are complete
+    private final Sequence written = new Sequence();
+    private final List<Follower> followers = new ArrayList<>();
+    // Lowest sequence every consumer has passed, as last computed by a producer
+    private volatile long gateCache = -1;
+    private final Thread writer;
+    // Set by the writer when the journal failed under a batch; nothing is applied after it
+    private volatile RuntimeException journalFailure;
+
+    public BookingPipeline(RentalService service, String name) {
+        this(service, name, DEFAULT_CAPACITY, List.of());
+    }
+
+    // The capacity is rounded up to a power of two
+    public BookingPipeline(RentalService service, String name, int capacity, List<Projection> projections) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The ring capacity must be positive.");
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.service = service;
+        this.projectionFailures = service.getMetrics().counter("projection_failures",
+            "Pipeline events a projection threw on; the projection carries on with the next.");
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) ring[i] = new Slot();
+        this.mask = size - 1;
+        for (Projection projection : projections) {
+            followers.add(new Follower(projection, name + "-projection-" + followers.size()));
+        }
+        this.writer = new Thread(this::write, name + "-writer");
+        writer.setDaemon(true);
+        writer.start();
+        for (Follower follower : followers) follower.thread.start();
+    }
+
+    public CompletableFuture<Car> addCar(String carId, String brand, String model, double basePricePerDay) {
+        long sequence = claim();
+        if (sequence < 0) return rejected();
+        Slot slot = ring[(int) sequence & mask];
+        slot.kind = Kind.ADD_CAR;
+        slot.carId = carId;
+        slot.brand = brand;
+        slot.model = model;
+        slot.basePricePerDay = basePricePerDay;
+        return publish(slot, sequence);
+    }
+
+    public CompletableFuture<Rental> rentCar(String carId, String customerName, String phoneNumber, int days) {
+        long sequence = claim();
+        if (sequence < 0) return rejected();
+        Slot slot = ring[(int) sequence & mask];
+        slot.kind = Kind.RENT;
+        slot.carId = carId;
+        slot.customerName = customerName;
+        slot.phoneNumber = phoneNumber;
+        slot.days = days;
+        return publish(slot, sequence);
+    }
+
+    public CompletableFuture<Rental> returnCar(String carId) {
+        long sequence = claim();
+        if (sequence < 0) return rejected();
+        Slot slot = ring[(int) sequence & mask];
+        slot.kind = Kind.RETURN;
+        slot.carId = carId;
+        return publish(slot, sequence);
+    }
+
+    public CompletableFuture<Reservation> reserveCar(String carId, String customerName, String phoneNumber,
+                                                     LocalDate start, LocalDate end) {
+        long sequence = claim();
+        if (sequence < 0) return rejected();
+        Slot slot = ring[(int) sequence & mask];
+        slot.kind = Kind.RESERVE;
+        slot.carId = carId;
+        slot.customerName = customerName;
+        slot.phoneNumber = phoneNumber;
+        slot.start = start;
+        slot.end = end;
+        return publish(slot, sequence);
+    }
+
+    // Any other change, run on the writer in order with the rest; projections do not see it
+    public <T> CompletableFuture<T> submit(Function<RentalService, T> command) {
+        long sequence = claim();
+        if (sequence < 0) return rejected();
+        Slot slot = ring[(int) sequence & mask];
+        slot.kind = Kind.CUSTOM;
+        slot.custom = command;
+        return publish(slot, sequence);
+    }
+
+    // Stops taking commands and waits until the writer and the projections have handled
+    // every command taken before
+    public void close() {
+        stopClaims();
+        boolean interrupted = false;
+        List<Thread> threads = new ArrayList<>();
+        threads.add(writer);
+        for (Follower follower : followers) threads.add(follower.thread);
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void stopClaims() {
+        long next;
+        do {
+            next = claims.get();
+            if (next < 0) return;
+        } while (!claims.compareAndSet(next, -next - 1));
+    }
+
+    // A sequence whose slot is free to fill, or -1 once closed
+    private long claim() {
+        long sequence;
+        do {
+            sequence = claims.get();
+            if (sequence < 0) return -1;
+        } while (!claims.compareAndSet(sequence, sequence + 1));
+        long wrapPoint = sequence - ring.length;
+        if (wrapPoint > gateCache) {
+            int tries = 0;
+            long gate;
+            while (wrapPoint > (gate = slowestConsumer())) {
+                tries = idle(tries);
+            }
+            gateCache = gate;
+        }
+        return sequence;
+    }
+
+    private long slowestConsumer() {
+        long slowest = written.value;
+        for (Follower follower : followers) slowest = Math.min(slowest, follower.sequence.value);
+        return slowest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> publish(Slot slot, long sequence) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        slot.result = result;
+        slot.published = sequence;
+        return (CompletableFuture<T>) result;
+    }
+
+    private <T> CompletableFuture<T> rejected() {
+        RuntimeException failure = journalFailure;
+        if (failure != null) return CompletableFuture.failedFuture(stopped(failure));
+        return CompletableFuture.failedFuture(new IllegalStateException("The booking pipeline is closed."));
+    }
+
+    private static IllegalStateException stopped(RuntimeException failure) {
+        return new IllegalStateException("The booking pipeline stopped after the journal failed.", failure);
+    }
+
+    // Spins, then yields, then parks; returns the next try count
+    private static int idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+            return tries;
+        }
+        return tries + 1;
+    }
+
+    private void write() {
+        long next = 0;
+        int tries = 0;
+        while (true) {
+            long end = next - 1;
+            while (end - next + 1 < MAX_BATCH && ring[(int) (end + 1) & mask].published == end + 1) end++;
+            if (end < next) {
+                long claimed = claims.get();
+                if (claimed < 0 && next >= -claimed - 1) return;
+                tries = idle(tries);
+                continue;
+            }
+            tries = 0;
+            long first = next;
+            long last = end;
+            RuntimeException failure = journalFailure;
+            if (failure == null) {
+                try {
+                    service.batch(() -> {
+                        for (long sequence = first; sequence <= last; sequence++) apply(ring[(int) sequence & mask]);
+                    });
+                } catch (UncheckedIOException e) {
+                    // The journal could not confirm the batch. The changes stay applied, so
+                    // projections still see them, but their callers cannot be told they are durable
+                    journalFailure = e;
+                    stopClaims();
+                    failure = e;
+                }
+            } else {
+                for (long sequence = first; sequence <= last; sequence++) refuse(ring[(int) sequence & mask], failure);
+            }
+            for (long sequence = first; sequence <= last; sequence++) {
+                Slot slot = ring[(int) sequence & mask];
+                if (slot.failure != null) {
+                    slot.result.completeExceptionally(slot.failure);
+                } else if (failure != null) {
+                    slot.result.completeExceptionally(failure);
+                } else {
+                    slot.result.complete(slot.outcome);
+                }
+            }
+            written.value = last;
+            next = last + 1;
+        }
+    }
+
+    private void apply(Slot slot) {
+        slot.outcome = null;
+        slot.failure = null;
+        try {
+            switch (slot.kind) {
+                case ADD_CAR:
+                    slot.outcome = service.addCar(slot.carId, slot.brand, slot.model, slot.basePricePerDay);
+                    break;
+                case RENT:
+                    slot.outcome = service.rentCar(slot.carId, slot.customerName, slot.phoneNumber, slot.days);
+                    break;
+                case RETURN:
+                    slot.outcome = service.returnCar(slot.carId);
+                    break;
+                case RESERVE:
+                    slot.outcome = service.reserveCar(slot.carId, slot.customerName, slot.phoneNumber, slot.start, slot.end);
+                    break;
+                default:
+                    slot.outcome = slot.custom.apply(service);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            slot.failure = e;
+        }
+    }
+
+    // Claimed before the pipeline stopped; never applied
+    private static void refuse(Slot slot, RuntimeException failure) {
+        slot.outcome = null;
+        slot.failure = stopped(failure);
+    }
+
+    // Feeds one projection from the slots the writer has finished with
+    private final class Follower {
+        final Projection projection;
+        final Sequence sequence = new Sequence();
+        final Thread thread;
+
+        Follower(Projection projection, String name) {
+            this.projection = projection;
+            this.thread = new Thread(this::follow, name);
+            thread.setDaemon(true);
+        }
+
+        private void follow() {
+            long next = 0;
+            int tries = 0;
+            while (true) {
+                long available = written.value;
+                if (available < next) {
+                    if (!writer.isAlive() && written.value < next) return;
+                    tries = idle(tries);
+                    continue;
+                }
+                tries = 0;
+                for (long current = next; current <= available; current++) {
+                    Slot slot = ring[(int) current & mask];
+                    if (slot.failure == null) {
+                        try {
+                            dispatch(slot);
+                        } catch (RuntimeException e) {
+                            // A broken view must not stop the others or the writer
+                            projectionFailures.increment();
+                            LOG.log(Level.WARNING, thread.getName() + " failed on a " + slot.kind + " event", e);
+                        }
+                    }
+                }
+                try {
+                    projection.batchEnded();
+                } catch (RuntimeException e) {
+                    projectionFailures.increment();
+                    LOG.log(Level.WARNING, thread.getName() + " failed at the end of a batch", e);
+                }
+                sequence.value = available;
+                next = available + 1;
+            }
+        }
+
+        private void dispatch(Slot slot) {
+            switch (slot.kind) {
+                case ADD_CAR:
+                    projection.carAdded((Car) slot.outcome);
+                    break;
+                case RENT:
+                    projection.carRented((Rental) slot.outcome);
+                    break;
+                case RETURN:
+                    projection.carReturned((Rental) slot.outcome);
+                    break;
+                case RESERVE:
+                    projection.reserved((Reservation) slot.outcome);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// The fleet and rental state split into per-branch shards, each a
+// RentalService of its own (with its own data directory under the network's
+// root when opened from disk). Branches share no locks, journals or indexes,
+// so bookings in one city never wait for another's.
+//
+// Every change to a branch goes through that branch's BookingPipeline and is
+// applied by its single writer thread, in batches that wait on the journal
+// once; callers get a CompletableFuture completed once the change is durable.
+//
+// Car IDs are unique across the network and route bookings to the car's
+// branch. A transfer retires the car at the source branch and adds it at the
+// target; its past rentals stay in the source branch's history. Queries over
+// every branch fan out to the branches in parallel and merge the results in
+// branch-name order.
+class BranchNetwork {
+    private static final int TOP_CUSTOMERS = 10;
+
+    private final Path root;
+    private final Map<String, Branch> branches = new ConcurrentSkipListMap<>();
+    private final Map<String, Branch> branchByCarId = new ConcurrentHashMap<>();
+    private final ExecutorService queries;
+
+    // Branches kept in memory only
+    public BranchNetwork() {
+        this(null);
+    }
+
+    private BranchNetwork(Path root) {
+        this.root = root;
+        this.queries = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "branch-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Opens every branch directory under the root
+    public static BranchNetwork open(Path root) throws IOException {
+        Files.createDirectories(root);
+        BranchNetwork network = new BranchNetwork(root);
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path directory : directories) {
+                String name = directory.getFileName().toString();
+                network.branches.put(name, new Branch(name, RentalService.open(directory)));
+            }
+        }
+        network.routeCars();
+        network.branches.values().forEach(Branch::start);
+        return network;
+    }
+
+    // Routes every car to its branch. A car retired everywhere was caught mid-transfer
+    // by a crash; it goes back to the first branch (by name) that retired it.
+    private void routeCars() throws IOException {
+        for (Branch branch : branches.values()) {
+            for (Car car : branch.service.getCars()) {
+                Branch other = branchByCarId.putIfAbsent(car.getCarId(), branch);
+                if (other != null) {
+                    throw new IOException("Car " + car.getCarId() + " is in both branch " + other.name + " and branch " + branch.name + ".");
+                }
+            }
+        }
+        for (Branch branch : branches.values()) {
+            for (Car car : branch.service.getRetiredCars()) {
+                if (branchByCarId.putIfAbsent(car.getCarId(), branch) == null) {
+                    branch.service.addCar(car.getCarId(), car.getBrand(), car.getModel(), car.getBasePricePerDay());
+                }
+            }
+        }
+    }
+
+    public void addBranch(String name) throws IOException {
+        if (name == null || !name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Branch names may use letters, digits, '-' and '_' only.");
+        }
+        synchronized (branches) {
+            if (branches.containsKey(name)) {
+                throw new IllegalStateException("Branch " + name + " already exists.");
+            }
+            Branch branch = new Branch(name, root == null ? new RentalService() : RentalService.open(root.resolve(name)));
+            branch.start();
+            branches.put(name, branch);
+        }
+    }
+
+    public List<String> getBranches() {
+        return new ArrayList<>(branches.keySet());
+    }
+
+    // The branch's service, for reads; changes should go through submit so they run on its writer
+    public RentalService getBranch(String name) {
+        return requireBranch(name).service;
+    }
+
+    // Name of the branch the car belongs to, or null if no branch has it
+    public String findBranch(String carId) {
+        Branch branch = carId == null ? null : branchByCarId.get(carId.trim());
+        return branch == null ? null : branch.name;
+    }
+
+    // Runs any change on the branch's writer thread
+    public <T> CompletableFuture<T> submit(String branch, Function<RentalService, T> command) {
+        return requireBranch(branch).submit(command);
+    }
+
+    public CompletableFuture<Car> addCar(String branch, String carId, String brand, String model, double basePricePerDay) {
+        Branch target = requireBranch(branch);
+        if (carId == null || carId.isBlank()) {
+            throw new IllegalArgumentException("Car ID, brand and model are required.");
+        }
+        String key = carId.trim();
+        Branch owner = branchByCarId.putIfAbsent(key, target);
+        if (owner != null) {
+            throw new IllegalStateException("Car " + key + " already belongs to branch " + owner.name + ".");
+        }
+        return target.pipeline().addCar(key, brand, model, basePricePerDay)
+            .whenComplete((car, failure) -> {
+                if (failure != null) branchByCarId.remove(key, target);
+            });
+    }
+
+    public CompletableFuture<Rental> rentCar(String carId, String customerName, String phoneNumber, int days) {
+        return branchOf(carId).pipeline().rentCar(carId, customerName, phoneNumber, days);
+    }
+
+    public CompletableFuture<Rental> returnCar(String carId) {
+        return branchOf(carId).pipeline().returnCar(carId);
+    }
+
+    public CompletableFuture<Reservation> reserveCar(String carId, String customerName, String phoneNumber,
+                                                     LocalDate start, LocalDate end) {
+        return branchOf(carId).pipeline().reserveCar(carId, customerName, phoneNumber, start, end);
+    }
+
+    // Moves an available, unreserved car to another branch. If the target cannot take it,
+    // the car goes back into the source branch's fleet.
+    public CompletableFuture<Car> transferCar(String carId, String toBranch) {
+        Branch source = branchOf(carId);
+        Branch target = requireBranch(toBranch);
+        if (source == target) {
+            throw new IllegalStateException("Car " + carId.trim() + " is already in branch " + target.name + ".");
+        }
+        return source.submit(service -> service.retireCar(carId))
+            .thenCompose(car -> target.submit(service -> {
+                Car added = service.addCar(car.getCarId(), car.getBrand(), car.getModel(), car.getBasePricePerDay());
+                branchByCarId.put(added.getCarId(), target);
+                return added;
+            }).exceptionallyCompose(failure -> source.submit(service -> {
+                service.addCar(car.getCarId(), car.getBrand(), car.getModel(), car.getBasePricePerDay());
+                throw unwrap(failure);
+            })));
+    }
+
+    // Matching cars of every branch
+    public List<Car> findCars(CarQuery query) {
+        List<Car> found = new ArrayList<>();
+        for (List<Car> cars : fanOut(service -> service.findCars(query))) found.addAll(cars);
+        return found;
+    }
+
+    // Matching rentals of every branch, as one view over the branches' own result views
+    public List<Rental> findRentals(String text, LocalDateTime from, LocalDateTime to, Boolean returned) {
+        return new Concatenation<>(fanOut(service -> service.findRentals(text, from, to, returned)));
+    }
+
+    public RentalStatistics getStatistics() {
+        int total = 0;
+        int active = 0;
+        double revenue = 0;
+        for (RentalStatistics statistics : fanOut(RentalService::getStatistics)) {
+            total += statistics.getTotalRentals();
+            active += statistics.getActiveRentals();
+            revenue += statistics.getTotalRevenue();
+        }
+        return new RentalStatistics(total, active, revenue);
+    }
+
+    // Each branch builds its report on its own engine; the reports are then merged. Top
+    // customers are merged from each branch's top list, so a customer whose rentals are
+    // spread over branches counts in full only where they made that branch's list.
+    public CompletableFuture<RentalReport> generateReport() {
+        List<CompletableFuture<RentalReport>> reports = new ArrayList<>();
+        for (Branch branch : branches.values()) reports.add(branch.service.generateReport());
+        return CompletableFuture.allOf(reports.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<RentalReport> parts = new ArrayList<>(reports.size());
+            for (CompletableFuture<RentalReport> report : reports) parts.add(report.join());
+            return merge(parts);
+        });
+    }
+
+    // Stops taking commands, lets each writer finish what is queued, then closes the branches
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Branch branch : branches.values()) {
+            try {
+                branch.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        queries.shutdown();
+        if (failure != null) throw failure;
+    }
+
+    private Branch requireBranch(String name) {
+        Branch branch = name == null ? null : branches.get(name.trim());
+        if (branch == null) {
+            throw new IllegalArgumentException("No branch named " + name + ".");
+        }
+        return branch;
+    }
+
+    private Branch branchOf(String carId) {
+        Branch branch = carId == null ? null : branchByCarId.get(carId.trim());
+        if (branch == null) {
+            throw new IllegalArgumentException("No car with ID " + carId + ".");
+        }
+        return branch;
+    }
+
+    // Runs the query on every branch in parallel; results in branch-name order
+    private <T> List<T> fanOut(Function<RentalService, T> query) {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (Branch branch : branches.values()) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(branch.service), queries));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) results.add(future.join());
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+        return results;
+    }
+
+    private static RuntimeException unwrap(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    private static RentalReport merge(List<RentalReport> parts) {
+        int rentals = 0;
+        double revenue = 0;
+        double days = 0;
+        Map<String, Double> byBrand = new TreeMap<>();
+        Map<String, Double> byModel = new TreeMap<>();
+        SortedMap<LocalDate, Double> byDay = new TreeMap<>();
+        Map<Car, Double> utilization = new LinkedHashMap<>();
+        Map<String, RentalReport.CustomerTotal> customers = new LinkedHashMap<>();
+        for (RentalReport part : parts) {
+            rentals += part.getRentals();
+            revenue += part.getRevenue();
+            days += part.getAverageDays() * part.getRentals();
+            part.getRevenueByBrand().forEach((key, value) -> byBrand.merge(key, value, Double::sum));
+            part.getRevenueByModel().forEach((key, value) -> byModel.merge(key, value, Double::sum));
+            part.getRevenueByDay().forEach((key, value) -> byDay.merge(key, value, Double::sum));
+            utilization.putAll(part.getUtilizationByCar());
+            for (RentalReport.CustomerTotal customer : part.getTopCustomers()) {
+                String key = customer.getPhoneNumber().isEmpty() ? customer.getName() : customer.getPhoneNumber();
+                customers.merge(key, customer, (a, b) -> new RentalReport.CustomerTotal(a.getName(), a.getPhoneNumber(),
+                    a.getRentals() + b.getRentals(), a.getRevenue() + b.getRevenue()));
+            }
+        }
+        Comparator<RentalReport.CustomerTotal> byRevenue = Comparator.comparingDouble(RentalReport.CustomerTotal::getRevenue);
+        PriorityQueue<RentalReport.CustomerTotal> top = new PriorityQueue<>(byRevenue);
+        for (RentalReport.CustomerTotal customer : customers.values()) {
+            top.add(customer);
+            if (top.size() > TOP_CUSTOMERS) top.poll();
+        }
+        List<RentalReport.CustomerTotal> ranked = new ArrayList<>(top);
+        ranked.sort(byRevenue.reversed());
+        return new RentalReport(rentals, revenue, rentals == 0 ? 0 : days / rentals, byBrand, byModel, byDay,
+            utilization, ranked);
+    }
+
+    // One shard: a service and the pipeline whose single writer applies its changes
+    private static final class Branch {
+        final String name;
+        final RentalService service;
+        private volatile BookingPipeline pipeline;
+
+        Branch(String name, RentalService service) {
+            this.name = name;
+            this.service = service;
+        }
+
+        void start() {
+            pipeline = new BookingPipeline(service, "branch-" + name);
+        }
+
+        BookingPipeline pipeline() {
+            return pipeline;
+        }
+
+        <T> CompletableFuture<T> submit(Function<RentalService, T> action) {
+            return pipeline.submit(action);
+        }
+
+        void close() throws IOException {
+            pipeline.close();
+            service.close();
+        }
+    }
+
+    // Read-only list over several lists, in order; reads go through to the parts
+    private static final class Concatenation<E> extends AbstractList<E> {
+        private final List<List<E>> parts;
+        private final int[] starts;
+        private final int size;
+
+        Concatenation(List<List<E>> parts) {
+            this.parts = parts;
+            this.starts = new int[parts.size()];
+            int total = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                starts[i] = total;
+                total += parts.get(i).size();
+            }
+            this.size = total;
+        }
+
+        @Override
+        public E get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            int part = Arrays.binarySearch(starts, index);
+            // Empty parts share a start with the next one; take the last part starting there
+            if (part < 0) {
+                part = -part - 2;
+            } else {
+                while (part + 1 < starts.length && starts[part + 1] == index) part++;
+            }
+            return parts.get(part).get(index - starts[part]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// Streaming import and export of cars and rentals, as CSV (files ending in
+// .csv) or a compact binary format (anything else).
+//
+// An import reads the file through a FileChannel in CHUNK_BYTES chunks cut at
+// a record boundary. Chunks are parsed and checked in parallel, then applied
+// to the service in file order, one addCars or importRentals call per chunk,
+// so journal waits and index updates are batched per chunk. Only a few chunks
+// are in flight at once, so memory stays bounded whatever the file size.
+//
+// CSV files start with a header line. Fields holding a comma or a quote are
+// quoted, with quotes doubled; values cannot contain line breaks. Binary files
+// start with an int magic, a version byte and a kind byte; each record is an
+// int length and its fields, strings as a short length and UTF-8 bytes, dates
+// as epoch seconds and nanos.
+class BulkTransfer {
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int MAGIC = 0x52425846;
+    private static final byte VERSION = 1;
+    private static final byte CARS = 1;
+    private static final byte RENTALS = 2;
+    private static final int HEADER_BYTES = 6;
+    private static final String CAR_HEADER = "carId,brand,model,basePricePerDay";
+    private static final String RENTAL_HEADER = "carId,customerName,phoneNumber,days,rentalDate,totalPrice,returnDate";
+    private static final int MAX_REPORTED_PROBLEMS = 100;
+
+    // Counts of what an import did, with the first few reasons records were rejected
+    public static final class Report {
+        private int imported;
+        private int rejected;
+        private final List<String> problems = new ArrayList<>();
+
+        public int getImported() { return imported; }
+        public int getRejected() { return rejected; }
+        public List<String> getProblems() { return Collections.unmodifiableList(problems); }
+
+        private void reject(String where, String reason) {
+            rejected++;
+            if (problems.size() < MAX_REPORTED_PROBLEMS) problems.add(where + ": " + reason);
+        }
+    }
+
+    // A chunk's records after parsing; problems are keyed by record index within the chunk
+    private static final class Parsed<T> {
+        final List<T> values = new ArrayList<>();
+        final List<Integer> failedAt = new ArrayList<>();
+        final List<String> reasons = new ArrayList<>();
+        int records;
+    }
+
+    private interface Decoder<T> {
+        T decode(ByteBuffer record);
+    }
+
+    public static Report importCars(RentalService service, Path file) throws IOException {
+        boolean csv = isCsv(file);
+        return importFile(file, csv, CARS, csv ? BulkTransfer::carFromCsv : BulkTransfer::carFromBinary,
+            service::addCars);
+    }
+
+    public static Report importRentals(RentalService service, Path file) throws IOException {
+        boolean csv = isCsv(file);
+        return importFile(file, csv, RENTALS, csv ? BulkTransfer::rentalFromCsv : BulkTransfer::rentalFromBinary,
+            service::importRentals);
+    }
+
+    // Returns the number of cars written
+    public static int exportCars(RentalService service, Path file) throws IOException {
+        List<Car> cars = service.getCars();
+        try (Output out = new Output(file)) {
+            if (isCsv(file)) {
+                out.putLine(CAR_HEADER);
+                StringBuilder line = new StringBuilder();
+                for (Car car : cars) {
+                    line.setLength(0);
+                    appendField(line, car.getCarId()).append(',');
+                    appendField(line, car.getBrand()).append(',');
+                    appendField(line, car.getModel()).append(',').append(car.getBasePricePerDay());
+                    out.putLine(line);
+                }
+            } else {
+                out.putHeader(CARS);
+                for (Car car : cars) {
+                    byte[] carId = utf8(car.getCarId());
+                    byte[] brand = utf8(car.getBrand());
+                    byte[] model = utf8(car.getModel());
+                    ByteBuffer record = out.record(strings(carId, brand, model) + 8);
+                    putString(record, carId);
+                    putString(record, brand);
+                    putString(record, model);
+                    record.putDouble(car.getBasePricePerDay());
+                }
+            }
+        }
+        return cars.size();
+    }
+
+    // Returns the number of rentals written. Returned rentals are built one row at a time,
+    // so the export does not hold the history in memory.
+    public static int exportRentals(RentalService service, Path file) throws IOException {
+        List<Rental> rentals = service.getRentals();
+        try (Output out = new Output(file)) {
+            if (isCsv(file)) {
+                out.putLine(RENTAL_HEADER);
+                StringBuilder line = new StringBuilder();
+                for (Rental rental : rentals) {
+                    line.setLength(0);
+                    appendField(line, rental.getCar().getCarId()).append(',');
+                    appendField(line, rental.getCustomer().getName()).append(',');
+                    appendField(line, rental.getCustomer().getPhoneNumber()).append(',');
+                    line.append(rental.getDays()).append(',').append(rental.getRentalDate()).append(',')
+                        .append(rental.getTotalPrice()).append(',');
+                    if (rental.isReturned()) line.append(rental.getReturnDate());
+                    out.putLine(line);
+                }
+            } else {
+                out.putHeader(RENTALS);
+                for (Rental rental : rentals) {
+                    byte[] carId = utf8(rental.getCar().getCarId());
+                    byte[] name = utf8(rental.getCustomer().getName());
+                    byte[] phone = utf8(rental.getCustomer().getPhoneNumber());
+                    boolean returned = rental.isReturned();
+                    ByteBuffer record = out.record(strings(carId, name, phone) + 4 + 12 + 8 + 1 + (returned ? 12 : 0));
+                    putString(record, carId);
+                    putString(record, name);
+                    putString(record, phone);
+                    record.putInt(rental.getDays());
+                    putDateTime(record, rental.getRentalDate());
+                    record.putDouble(rental.getTotalPrice());
+                    record.put(returned ? (byte) 1 : (byte) 0);
+                    if (returned) putDateTime(record, rental.getReturnDate());
+                }
+            }
+        }
+        return rentals.size();
+    }
+
+    private static <T> Report importFile(Path file, boolean csv, byte kind, Decoder<T> decoder,
+                                         Function<List<T>, BatchResult<?>> apply) throws IOException {
+        int parsers = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(parsers, task -> {
+            Thread thread = new Thread(task, "bulk-import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Report report = new Report();
+        // CSV line numbers count the header line
+        int[] recordsBefore = { csv ? 1 : 0 };
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+            Deque<Future<Parsed<T>>> inFlight = new ArrayDeque<>();
+            boolean endOfFile = false;
+            boolean header = true;
+            while (!endOfFile) {
+                while (!endOfFile && buffer.hasRemaining()) endOfFile = channel.read(buffer) < 0;
+                buffer.flip();
+                if (header) {
+                    skipHeader(file, buffer, csv, kind);
+                    header = false;
+                }
+                int end = endOfFile ? buffer.limit() : buffer.position() + completeBytes(file, buffer, csv);
+                if (end == buffer.position() && !endOfFile) {
+                    throw new IOException(file + " has a record longer than " + CHUNK_BYTES + " bytes.");
+                }
+                byte[] chunk = new byte[end - buffer.position()];
+                buffer.get(chunk);
+                buffer.compact();
+                if (chunk.length > 0) inFlight.add(pool.submit(() -> parse(file, chunk, csv, decoder)));
+                // Keep every parser busy while this thread applies the oldest chunk
+                while (inFlight.size() > parsers || (endOfFile && !inFlight.isEmpty())) {
+                    applyChunk(inFlight.removeFirst(), apply, csv, recordsBefore, report);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    private static <T> void applyChunk(Future<Parsed<T>> pending, Function<List<T>, BatchResult<?>> apply,
+                                       boolean csv, int[] recordsBefore, Report report) throws IOException {
+        Parsed<T> parsed;
+        try {
+            parsed = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Could not parse the import file.", e.getCause());
+        }
+        for (int i = 0; i < parsed.failedAt.size(); i++) {
+            int number = recordsBefore[0] + parsed.failedAt.get(i) + 1;
+            report.reject((csv ? "Line " : "Record ") + number, parsed.reasons.get(i));
+        }
+        recordsBefore[0] += parsed.records;
+        if (parsed.values.isEmpty()) return;
+        BatchResult<?> result = apply.apply(parsed.values);
+        report.imported += result.getSucceeded().size();
+        for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+            report.reject(failure.getKey(), failure.getValue());
+        }
+        // Failures are keyed by car ID, so several for one car count as one entry above
+        report.rejected += parsed.values.size() - result.getSucceeded().size() - result.getFailures().size();
+    }
+
+    private static <T> Parsed<T> parse(Path file, byte[] chunk, boolean csv, Decoder<T> decoder) throws IOException {
+        Parsed<T> parsed = new Parsed<>();
+        ByteBuffer records = ByteBuffer.wrap(chunk);
+        while (records.hasRemaining()) {
+            ByteBuffer record;
+            if (csv) {
+                int end = records.position();
+                while (end < records.limit() && chunk[end] != '\n') end++;
+                record = records.slice(records.position(), end - records.position());
+                records.position(Math.min(end + 1, records.limit()));
+            } else if (records.remaining() < 4
+                    || recordLength(file, records.getInt(records.position())) > records.remaining() - 4) {
+                parsed.failedAt.add(parsed.records++);
+                parsed.reasons.add("The record is truncated.");
+                break;
+            } else {
+                int length = records.getInt();
+                record = records.slice(records.position(), length);
+                records.position(records.position() + length);
+            }
+            int index = parsed.records++;
+            // Blank lines, such as a trailing one, are skipped
+            if (csv && (!record.hasRemaining() || record.remaining() == 1 && record.get(0) == '\r')) continue;
+            try {
+                parsed.values.add(decoder.decode(record));
+            } catch (RuntimeException e) {
+                parsed.failedAt.add(index);
+                parsed.reasons.add(e.getMessage() == null ? e.toString() : e.getMessage());
+            }
+        }
+        return parsed;
+    }
+
+    // Length of the run of whole records at the buffer's position
+    private static int completeBytes(Path file, ByteBuffer buffer, boolean csv) throws IOException {
+        if (csv) {
+            for (int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+                if (buffer.get(i) == '\n') return i + 1 - buffer.position();
+            }
+            return 0;
+        }
+        int at = buffer.position();
+        while (at + 4 <= buffer.limit()) {
+            int length = recordLength(file, buffer.getInt(at));
+            if (at + 4 + length > buffer.limit()) break;
+            at += 4 + length;
+        }
+        return at - buffer.position();
+    }
+
+    // A length no writer could have produced means the framing itself is lost, so
+    // nothing after it can be trusted and the whole import stops
+    private static int recordLength(Path file, int length) throws IOException {
+        if (length < 0 || length > CHUNK_BYTES) {
+            throw new IOException(file + " is corrupt: a record claims to be " + length + " bytes long.");
+        }
+        return length;
+    }
+
+    private static void skipHeader(Path file, ByteBuffer buffer, boolean csv, byte kind) throws IOException {
+        if (csv) {
+            while (buffer.hasRemaining() && buffer.get() != '\n') { }
+            return;
+        }
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a bulk transfer file.");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException(file + " has unsupported version " + version + ".");
+        }
+        if (buffer.get() != kind) {
+            throw new IOException(file + " holds " + (kind == CARS ? "rentals" : "cars") + ", not "
+                + (kind == CARS ? "cars" : "rentals") + ".");
+        }
+    }
+
+    private static Car carFromCsv(ByteBuffer line) {
+        List<String> fields = fields(line, 4);
+        return new Car(fields.get(0), fields.get(1), fields.get(2), number(fields.get(3), "price"));
+    }
+
+    private static Car carFromBinary(ByteBuffer record) {
+        return new Car(getString(record), getString(record), getString(record), record.getDouble());
+    }
+
+    private static RentalRecord rentalFromCsv(ByteBuffer line) {
+        List<String> fields = fields(line, 7);
+        int days;
+        try {
+            days = Integer.parseInt(fields.get(3).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of days: " + fields.get(3));
+        }
+        String returned = fields.get(6).trim();
+        return checked(new RentalRecord(fields.get(0), fields.get(1), fields.get(2), days,
+            dateTime(fields.get(4)), number(fields.get(5), "price"), returned.isEmpty() ? null : dateTime(returned)));
+    }
+
+    private static RentalRecord rentalFromBinary(ByteBuffer record) {
+        String carId = getString(record);
+        String name = getString(record);
+        String phone = getString(record);
+        int days = record.getInt();
+        LocalDateTime rentalDate = getDateTime(record);
+        double totalPrice = record.getDouble();
+        LocalDateTime returnDate = record.get() != 0 ? getDateTime(record) : null;
+        return checked(new RentalRecord(carId, name, phone, days, rentalDate, totalPrice, returnDate));
+    }
+
+    // The checks that need no service state, done here so they run on the parser threads
+    private static RentalRecord checked(RentalRecord record) {
+        if (record.getDays() <= 0) {
+            throw new IllegalArgumentException("Invalid number of days: " + record.getDays());
+        }
+        if (record.getTotalPrice() < 0) {
+            throw new IllegalArgumentException("Invalid price: " + record.getTotalPrice());
+        }
+        if (record.getReturnDate() != null && record.getReturnDate().isBefore(record.getRentalDate())) {
+            throw new IllegalArgumentException("The return date is before the rental date.");
+        }
+        return record;
+    }
+
+    // Splits one CSV line into exactly the expected number of fields
+    private static List<String> fields(ByteBuffer line, int expected) {
+        int length = line.remaining();
+        if (length > 0 && line.get(line.limit() - 1) == '\r') length--;
+        String text = new String(line.array(), line.arrayOffset() + line.position(), length, StandardCharsets.UTF_8);
+        List<String> fields = new ArrayList<>(expected);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if (fields.size() != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " fields but found " + fields.size() + ".");
+        }
+        return fields;
+    }
+
+    private static StringBuilder appendField(StringBuilder line, String value) {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Value cannot be exported to CSV: " + value);
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return line.append(value);
+        return line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static double number(String value, String name) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static LocalDateTime dateTime(String value) {
+        try {
+            return LocalDateTime.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+    }
+
+    private static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+
+    private static int strings(byte[]... values) {
+        int total = 0;
+        for (byte[] value : values) total += 2 + value.length;
+        return total;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Value too long to export: " + value);
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("The record is corrupt.");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void putDateTime(ByteBuffer buffer, LocalDateTime value) {
+        buffer.putLong(value.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(value.getNano());
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer buffer) {
+        return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+    }
+
+    // Buffered writer over a FileChannel, flushed CHUNK_BYTES at a time
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+
+        Output(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        }
+
+        void putHeader(byte kind) throws IOException {
+            ensure(HEADER_BYTES);
+            buffer.putInt(MAGIC).put(VERSION).put(kind);
+        }
+
+        void putLine(CharSequence line) throws IOException {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        // A view of the buffer for the next record's fields, after its length
+        ByteBuffer record(int bytes) throws IOException {
+            ensure(4 + bytes);
+            buffer.putInt(bytes);
+            ByteBuffer record = buffer.slice(buffer.position(), bytes);
+            buffer.position(buffer.position() + bytes);
+            return record;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            flush();
+            if (bytes > buffer.capacity()) throw new IOException("Record of " + bytes + " bytes is too large.");
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
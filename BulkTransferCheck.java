@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Feeds BulkTransfer truncated and corrupted files. Run with
+// java BulkTransferCheck; it exits non-zero on the first failed check.
+//
+// A truncated tail or a record whose fields do not parse must be rejected on
+// its own while the rest imports; a record length no writer could produce
+// must stop the import with an IOException, never hang or escape unchecked.
+class BulkTransferCheck {
+    private static final int CARS = 1000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("bulk-transfer-check");
+        try {
+            Path cars = directory.resolve("cars.bin");
+            BulkTransfer.exportCars(fleet(), cars);
+            byte[] exported = Files.readAllBytes(cars);
+
+            // Cut inside the last record: everything before it still imports
+            Path truncated = write(directory, "truncated.bin", copy(exported, exported.length - 5));
+            BulkTransfer.Report report = importCars(truncated);
+            check(report.getImported() == CARS - 1, "truncated file imports the whole records, got " + report.getImported());
+            check(report.getRejected() == 1, "truncated file rejects the cut record, got " + report.getRejected());
+
+            // Negative and oversized record lengths, at the first and at a later record
+            int second = 6 + 4 + ByteBuffer.wrap(exported, 6, 4).getInt();
+            for (int at : new int[] { 6, second }) {
+                for (int length : new int[] { -4, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, (1 << 20) + 1 }) {
+                    byte[] corrupt = copy(exported, exported.length);
+                    ByteBuffer.wrap(corrupt).putInt(at, length);
+                    Path file = write(directory, "length.bin", corrupt);
+                    check(failsWithIOException(file), "record length " + length + " at byte " + at + " stops the import");
+                }
+            }
+
+            // A string length pointing past its record spoils that record only
+            byte[] badString = copy(exported, exported.length);
+            ByteBuffer.wrap(badString).putShort(6 + 4, (short) 30_000);
+            report = importCars(write(directory, "string.bin", badString));
+            check(report.getImported() == CARS - 1, "bad string length rejects one record, imported " + report.getImported());
+            check(report.getRejected() == 1, "bad string length rejects one record, rejected " + report.getRejected());
+
+            // Not a bulk transfer file at all
+            check(failsWithIOException(write(directory, "garbage.bin", new byte[] { 1, 2, 3 })), "garbage header stops the import");
+
+            // CSV: a cut last line and a malformed line are rejected one by one
+            Path csv = directory.resolve("cars.csv");
+            BulkTransfer.exportCars(fleet(), csv);
+            byte[] text = Files.readAllBytes(csv);
+            byte[] cut = copy(text, text.length - 8);
+            report = importCars(write(directory, "truncated.csv", cut));
+            check(report.getImported() == CARS - 1, "truncated CSV imports the whole lines, got " + report.getImported());
+            check(report.getRejected() == 1, "truncated CSV rejects the cut line, got " + report.getRejected());
+            Files.writeString(directory.resolve("broken.csv"), "carId,brand,model,basePricePerDay\nC1,B,M,12\nC2,B\nC3,B,M,x\n");
+            report = importCars(directory.resolve("broken.csv"));
+            check(report.getImported() == 1 && report.getRejected() == 2, "malformed CSV lines are rejected one by one");
+
+            // A retired car's ID comes back as that car, as addCar does, not as a duplicate
+            RentalService retiring = fleet();
+            retiring.retireCar("C7");
+            report = BulkTransfer.importCars(retiring, cars);
+            check(report.getImported() == 1 && report.getRejected() == CARS - 1, "import reinstates the retired car only");
+            check(retiring.findCar("C7") != null && retiring.getRetiredCars().isEmpty(), "the retired car is back in the fleet");
+
+            // Rentals: a truncated binary file keeps the whole records
+            RentalService service = fleet();
+            LocalDateTime start = LocalDateTime.now().minusDays(10);
+            for (int i = 0; i < 10; i++) {
+                service.importRentals(List.of(new RentalRecord("C" + i, "Customer " + i, "90000000" + (10 + i), 2,
+                    start.plusHours(i), 100, start.plusDays(2).plusHours(i))));
+            }
+            Path rentals = directory.resolve("rentals.bin");
+            BulkTransfer.exportRentals(service, rentals);
+            byte[] rentalBytes = Files.readAllBytes(rentals);
+            Path cutRentals = write(directory, "rentals-cut.bin", copy(rentalBytes, rentalBytes.length - 3));
+            report = BulkTransfer.importRentals(fleet(), cutRentals);
+            check(report.getImported() == 9 && report.getRejected() == 1, "truncated rental file keeps nine rentals");
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+        System.out.println("BulkTransferCheck passed");
+    }
+
+    private static RentalService fleet() {
+        RentalService service = new RentalService();
+        for (int i = 0; i < CARS; i++) service.addCar("C" + i, "Brand" + (i % 7), "Model" + (i % 13), 1000 + i);
+        return service;
+    }
+
+    private static BulkTransfer.Report importCars(Path file) throws Exception {
+        return withTimeout(() -> BulkTransfer.importCars(new RentalService(), file));
+    }
+
+    // A corrupt length used to loop forever, so every import runs against a deadline
+    private static boolean failsWithIOException(Path file) throws Exception {
+        try {
+            importCars(file);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static <T> T withTimeout(Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-transfer-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<T> result = executor.submit(task);
+            try {
+                return result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new AssertionError("Import did not finish within " + TIMEOUT_SECONDS + " seconds.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                throw e;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Path write(Path directory, String name, byte[] bytes) throws IOException {
+        return Files.write(directory.resolve(name), bytes);
+    }
+
+    private static byte[] copy(byte[] bytes, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError("Failed: " + what);
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class Car {
+    private String carId;
+    private String brand;
+    private String model;
+    private double basePricePerDay;
+    // Claimed with compare-and-set so two bookings can never both win the same car
+    private final AtomicBoolean isAvailable = new AtomicBoolean(true);
+
+    public Car(String carId, String brand, String model, double basePricePerDay) {
+        this.carId = carId;
+        this.brand = brand;
+        this.model = model;
+        this.basePricePerDay = basePricePerDay;
+    }
+
+    public String getCarId() { return carId; }
+    public String getBrand() { return brand; }
+    public String getModel() { return model; }
+    public double getBasePricePerDay() { return basePricePerDay; }
+    public double calculatePrice(int days) { return basePricePerDay * days; }
+    public boolean isAvailable() { return isAvailable.get(); }
+    public boolean tryRent() { return isAvailable.compareAndSet(true, false); }
+    public boolean tryReturn() { return isAvailable.compareAndSet(false, true); }
+
+    public void rent() {
+        if (!tryRent()) throw new IllegalStateException("Car " + carId + " is already rented.");
+    }
+
+    public void returnCar() { isAvailable.set(true); }
+
+    public String toString() {
+        return carId + " - " + brand + " " + model + (isAvailable() ? " (Available)" : " (Rented)");
+    }
+}
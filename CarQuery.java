@@ -0,0 +1,23 @@
+// Filter for RentalService.findCars. Null fields are not filtered on; brand
+// and model match whole values, ignoring case. Prices are per day, inclusive.
+class CarQuery {
+    private final String brand;
+    private final String model;
+    private final Boolean available;
+    private final Double minPricePerDay;
+    private final Double maxPricePerDay;
+
+    public CarQuery(String brand, String model, Boolean available, Double minPricePerDay, Double maxPricePerDay) {
+        this.brand = brand;
+        this.model = model;
+        this.available = available;
+        this.minPricePerDay = minPricePerDay;
+        this.maxPricePerDay = maxPricePerDay;
+    }
+
+    public String getBrand() { return brand; }
+    public String getModel() { return model; }
+    public Boolean getAvailable() { return available; }
+    public Double getMinPricePerDay() { return minPricePerDay; }
+    public Double getMaxPricePerDay() { return maxPricePerDay; }
+}
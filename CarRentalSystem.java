@@ -1,521 +1,1029 @@
-import javax.swing.*;
-import javax.swing.border.*;
-import java.awt.*;
-import java.awt.event.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
-import java.text.NumberFormat;
-import java.util.Locale;
-
-class Car {
-    private String carId;
-    private String brand;
-    private String model;
-    private double basePricePerDay;
-    private boolean isAvailable;
-
-    public Car(String carId, String brand, String model, double basePricePerDay) {
-        this.carId = carId;
-        this.brand = brand;
-        this.model = model;
-        this.basePricePerDay = basePricePerDay;
-        this.isAvailable = true;
-    }
-
-    public String getCarId() { return carId; }
-    public String getBrand() { return brand; }
-    public String getModel() { return model; }
-    public double calculatePrice(int days) { return basePricePerDay * days; }
-    public boolean isAvailable() { return isAvailable; }
-    public void rent() { isAvailable = false; }
-    public void returnCar() { isAvailable = true; }
-
-    public String toString() {
-        return carId + " - " + brand + " " + model + (isAvailable ? " (Available)" : " (Rented)");
-    }
-}
-
-class Customer {
-    private String customerId;
-    private String name;
-    private String phoneNumber;
-    private List<Rental> rentalHistory;
-
-    public Customer(String customerId, String name, String phoneNumber) {
-        this.customerId = customerId;
-        this.name = name;
-        this.phoneNumber = phoneNumber;
-        this.rentalHistory = new ArrayList<>();
-    }
-
-    public String getCustomerId() { return customerId; }
-    public String getName() { return name; }
-    public String getPhoneNumber() { return phoneNumber; }
-    public List<Rental> getRentalHistory() { return rentalHistory; }
-    public void addRental(Rental rental) { rentalHistory.add(rental); }
-}
-
-class Rental {
-    private Car car;
-    private Customer customer;
-    private int days;
-    private LocalDateTime rentalDate;
-    private LocalDateTime returnDate;
-    private boolean isReturned;
-    private double totalPrice;
-
-    public Rental(Car car, Customer customer, int days) {
-        this.car = car;
-        this.customer = customer;
-        this.days = days;
-        this.rentalDate = LocalDateTime.now();
-        this.isReturned = false;
-        this.totalPrice = car.calculatePrice(days);
-    }
-
-    public Car getCar() { return car; }
-    public Customer getCustomer() { return customer; }
-    public int getDays() { return days; }
-    public LocalDateTime getRentalDate() { return rentalDate; }
-    public LocalDateTime getReturnDate() { return returnDate; }
-    public boolean isReturned() { return isReturned; }
-    public double getTotalPrice() { return totalPrice; }
-    
-    public void markAsReturned() { 
-        this.isReturned = true;
-        this.returnDate = LocalDateTime.now();
-    }
-}
-
-public class CarRentalSystem {
-    private JFrame frame;
-    private DefaultListModel<Car> carListModel;
-    private DefaultListModel<Rental> rentalListModel;
-    private JList<Car> carJList;
-    private JList<Rental> rentalJList;
-    private final List<Car> cars;
-    private final List<Customer> customers;
-    private final List<Rental> rentals;
-    private JTextField searchField;
-    private JComboBox<String> filterComboBox;
-    private JLabel statsLabel;
-    
-    // Currency formatter for Indian Rupees
-    private static final NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("en", "IN"));
-    
-    // Color scheme
-    private static final Color PRIMARY_COLOR = new Color(41, 128, 185);    // Blue
-    private static final Color SECONDARY_COLOR = new Color(52, 152, 219);  // Light Blue
-    private static final Color BACKGROUND_COLOR = new Color(236, 240, 241); // Light Gray
-    private static final Color TEXT_COLOR = new Color(44, 62, 80);         // Dark Blue
-    private static final Color SUCCESS_COLOR = new Color(46, 204, 113);    // Green
-    private static final Color WARNING_COLOR = new Color(231, 76, 60);     // Red
-
-    public CarRentalSystem() {
-        // Initialize lists
-        cars = new ArrayList<>();
-        customers = new ArrayList<>();
-        rentals = new ArrayList<>();
-
-        // Setup Cars with prices in INR
-        cars.add(new Car("C001", "Toyota", "Camry", 5000.0));  // ₹5,000 per day
-        cars.add(new Car("C002", "Honda", "Accord", 6000.0));  // ₹6,000 per day
-        cars.add(new Car("C003", "Mahindra", "Thar", 12000.0)); // ₹12,000 per day
-
-        // Setup GUI
-        frame = new JFrame("Car Rental System");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(1000, 600);
-        frame.setLayout(new BorderLayout(10, 10));
-        frame.getContentPane().setBackground(BACKGROUND_COLOR);
-
-        // Create title panel
-        JPanel titlePanel = new JPanel();
-        titlePanel.setBackground(PRIMARY_COLOR);
-        titlePanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        JLabel titleLabel = new JLabel("Car Rental System", SwingConstants.CENTER);
-        titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
-        titleLabel.setForeground(Color.WHITE);
-        titlePanel.add(titleLabel);
-        frame.add(titlePanel, BorderLayout.NORTH);
-
-        // Create main content panel
-        JPanel contentPanel = new JPanel(new BorderLayout(10, 0));
-        contentPanel.setBackground(BACKGROUND_COLOR);
-
-        // Left panel - Car List
-        JPanel leftPanel = new JPanel(new BorderLayout());
-        leftPanel.setBackground(BACKGROUND_COLOR);
-        
-        JLabel carListLabel = new JLabel("Available Cars", SwingConstants.CENTER);
-        carListLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        carListLabel.setForeground(TEXT_COLOR);
-        leftPanel.add(carListLabel, BorderLayout.NORTH);
-
-        carListModel = new DefaultListModel<>();
-        cars.forEach(carListModel::addElement);
-
-        carJList = new JList<>(carListModel);
-        carJList.setCellRenderer(new CarListRenderer());
-        carJList.setBackground(Color.WHITE);
-        carJList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        carJList.setFont(new Font("Arial", Font.PLAIN, 14));
-        
-        JScrollPane carScrollPane = new JScrollPane(carJList);
-        carScrollPane.setBorder(BorderFactory.createCompoundBorder(
-            BorderFactory.createEmptyBorder(10, 10, 10, 10),
-            BorderFactory.createLineBorder(PRIMARY_COLOR, 2)
-        ));
-        leftPanel.add(carScrollPane, BorderLayout.CENTER);
-
-        // Right panel - Rental History
-        JPanel rightPanel = new JPanel(new BorderLayout());
-        rightPanel.setBackground(BACKGROUND_COLOR);
-
-        // Create rental history header panel
-        JPanel rentalHeaderPanel = new JPanel(new BorderLayout());
-        rentalHeaderPanel.setBackground(BACKGROUND_COLOR);
-        
-        JLabel rentalListLabel = new JLabel("Rental History", SwingConstants.CENTER);
-        rentalListLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        rentalListLabel.setForeground(TEXT_COLOR);
-        rentalHeaderPanel.add(rentalListLabel, BorderLayout.NORTH);
-
-        // Create search and filter panel
-        JPanel searchFilterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        searchFilterPanel.setBackground(BACKGROUND_COLOR);
-        
-        searchField = new JTextField(15);
-        searchField.setFont(new Font("Arial", Font.PLAIN, 14));
-        searchField.addKeyListener(new KeyAdapter() {
-            public void keyReleased(KeyEvent e) {
-                filterRentals();
-            }
-        });
-        
-        String[] filterOptions = {"All", "Active", "Returned", "Last 7 Days", "Last 30 Days"};
-        filterComboBox = new JComboBox<>(filterOptions);
-        filterComboBox.setFont(new Font("Arial", Font.PLAIN, 14));
-        filterComboBox.addActionListener(e -> filterRentals());
-        
-        searchFilterPanel.add(new JLabel("Search: "));
-        searchFilterPanel.add(searchField);
-        searchFilterPanel.add(new JLabel("Filter: "));
-        searchFilterPanel.add(filterComboBox);
-        
-        rentalHeaderPanel.add(searchFilterPanel, BorderLayout.CENTER);
-        rightPanel.add(rentalHeaderPanel, BorderLayout.NORTH);
-
-        // Create rental list
-        rentalListModel = new DefaultListModel<>();
-        rentalJList = new JList<>(rentalListModel);
-        rentalJList.setCellRenderer(new RentalListRenderer());
-        rentalJList.setBackground(Color.WHITE);
-        rentalJList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        rentalJList.setFont(new Font("Arial", Font.PLAIN, 14));
-        
-        JScrollPane rentalScrollPane = new JScrollPane(rentalJList);
-        rentalScrollPane.setBorder(BorderFactory.createCompoundBorder(
-            BorderFactory.createEmptyBorder(10, 10, 10, 10),
-            BorderFactory.createLineBorder(PRIMARY_COLOR, 2)
-        ));
-        rightPanel.add(rentalScrollPane, BorderLayout.CENTER);
-
-        // Create statistics panel
-        JPanel statsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        statsPanel.setBackground(BACKGROUND_COLOR);
-        statsLabel = new JLabel();
-        statsLabel.setFont(new Font("Arial", Font.PLAIN, 14));
-        statsLabel.setForeground(TEXT_COLOR);
-        statsPanel.add(statsLabel);
-        rightPanel.add(statsPanel, BorderLayout.SOUTH);
-
-        // Add panels to content panel
-        contentPanel.add(leftPanel, BorderLayout.WEST);
-        contentPanel.add(rightPanel, BorderLayout.CENTER);
-        frame.add(contentPanel, BorderLayout.CENTER);
-
-        // Create buttons panel
-        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
-        buttonPanel.setBackground(BACKGROUND_COLOR);
-        
-        JButton rentButton = createStyledButton("Rent Car", SUCCESS_COLOR);
-        JButton returnButton = createStyledButton("Return Car", WARNING_COLOR);
-        JButton addCarButton = createStyledButton("Add New Car", SECONDARY_COLOR);
-
-        rentButton.addActionListener(e -> rentCar());
-        returnButton.addActionListener(e -> returnCar());
-        addCarButton.addActionListener(e -> addNewCar());
-
-        buttonPanel.add(rentButton);
-        buttonPanel.add(returnButton);
-        buttonPanel.add(addCarButton);
-        frame.add(buttonPanel, BorderLayout.SOUTH);
-
-        // Center the frame on screen
-        frame.setLocationRelativeTo(null);
-        frame.setVisible(true);
-
-        updateStatistics();
-    }
-
-    private JButton createStyledButton(String text, Color color) {
-        JButton button = new JButton(text);
-        button.setFont(new Font("Arial", Font.BOLD, 14));
-        button.setForeground(Color.WHITE);
-        button.setBackground(color);
-        button.setFocusPainted(false);
-        button.setBorderPainted(false);
-        button.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        
-        // Add hover effect
-        button.addMouseListener(new MouseAdapter() {
-            public void mouseEntered(MouseEvent e) {
-                button.setBackground(color.darker());
-            }
-            public void mouseExited(MouseEvent e) {
-                button.setBackground(color);
-            }
-        });
-        
-        return button;
-    }
-
-    private void rentCar() {
-        Car selectedCar = carJList.getSelectedValue();
-        if (selectedCar == null || !selectedCar.isAvailable()) {
-            JOptionPane.showMessageDialog(frame, "Please select an available car.");
-            return;
-        }
-
-        String name = JOptionPane.showInputDialog(frame, "Enter customer name:");
-        if (name == null || name.trim().isEmpty()) return;
-
-        String phone = JOptionPane.showInputDialog(frame, "Enter customer phone number:");
-        if (phone == null || phone.trim().isEmpty()) return;
-
-        String daysStr = JOptionPane.showInputDialog(frame, "Enter number of days:");
-        int days;
-        try {
-            days = Integer.parseInt(daysStr);
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(frame, "Please enter a valid number of days.");
-            return;
-        }
-
-        double price = selectedCar.calculatePrice(days);
-        int confirm = JOptionPane.showConfirmDialog(frame, 
-            String.format("Total price: %s\nConfirm rental?", currencyFormatter.format(price)), 
-            "Confirm Rental", 
-            JOptionPane.YES_NO_OPTION);
-
-        if (confirm == JOptionPane.YES_OPTION) {
-            Customer customer = new Customer("CUS" + (customers.size() + 1), name, phone);
-            customers.add(customer);
-            selectedCar.rent();
-            Rental rental = new Rental(selectedCar, customer, days);
-            rentals.add(rental);
-            customer.addRental(rental);
-            refreshCarList();
-            refreshRentalList();
-            updateStatistics();
-            JOptionPane.showMessageDialog(frame, "Car rented successfully!");
-        }
-    }
-
-    private void returnCar() {
-        Car selectedCar = carJList.getSelectedValue();
-        if (selectedCar == null || selectedCar.isAvailable()) {
-            JOptionPane.showMessageDialog(frame, "Please select a rented car.");
-            return;
-        }
-
-        Rental rentalToRemove = null;
-        for (Rental rental : rentals) {
-            if (rental.getCar() == selectedCar && !rental.isReturned()) {
-                rentalToRemove = rental;
-                break;
-            }
-        }
-
-        if (rentalToRemove != null) {
-            Customer customer = rentalToRemove.getCustomer();
-            selectedCar.returnCar();
-            rentalToRemove.markAsReturned();
-            refreshCarList();
-            refreshRentalList();
-            updateStatistics();
-            JOptionPane.showMessageDialog(frame, "Car returned by " + customer.getName());
-        }
-    }
-
-    private void addNewCar() {
-        String carId = JOptionPane.showInputDialog(frame, "Enter car ID:");
-        if (carId == null || carId.trim().isEmpty()) return;
-
-        String brand = JOptionPane.showInputDialog(frame, "Enter car brand:");
-        if (brand == null || brand.trim().isEmpty()) return;
-
-        String model = JOptionPane.showInputDialog(frame, "Enter car model:");
-        if (model == null || model.trim().isEmpty()) return;
-
-        String priceStr = JOptionPane.showInputDialog(frame, "Enter base price per day:");
-        double price;
-        try {
-            price = Double.parseDouble(priceStr);
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(frame, "Please enter a valid price.");
-            return;
-        }
-
-        Car newCar = new Car(carId, brand, model, price);
-        cars.add(newCar);
-        refreshCarList();
-        JOptionPane.showMessageDialog(frame, "New car added successfully!");
-    }
-
-    private void refreshCarList() {
-        carListModel.clear();
-        for (Car car : cars) {
-            carListModel.addElement(car);
-        }
-    }
-
-    private void refreshRentalList() {
-        filterRentals(); // This will also update statistics
-    }
-
-    private void filterRentals() {
-        String searchText = searchField.getText().toLowerCase();
-        String filterOption = (String) filterComboBox.getSelectedItem();
-        
-        rentalListModel.clear();
-        for (Rental rental : rentals) {
-            if (matchesFilter(rental, searchText, filterOption)) {
-                rentalListModel.addElement(rental);
-            }
-        }
-        updateStatistics();
-    }
-
-    private boolean matchesFilter(Rental rental, String searchText, String filterOption) {
-        // Search text matching
-        boolean matchesSearch = searchText.isEmpty() ||
-            rental.getCar().getCarId().toLowerCase().contains(searchText) ||
-            rental.getCar().getBrand().toLowerCase().contains(searchText) ||
-            rental.getCar().getModel().toLowerCase().contains(searchText) ||
-            rental.getCustomer().getName().toLowerCase().contains(searchText) ||
-            rental.getCustomer().getPhoneNumber().contains(searchText);
-
-        if (!matchesSearch) return false;
-
-        // Filter option matching
-        switch (filterOption) {
-            case "Active":
-                return !rental.isReturned();
-            case "Returned":
-                return rental.isReturned();
-            case "Last 7 Days":
-                return ChronoUnit.DAYS.between(rental.getRentalDate(), LocalDateTime.now()) <= 7;
-            case "Last 30 Days":
-                return ChronoUnit.DAYS.between(rental.getRentalDate(), LocalDateTime.now()) <= 30;
-            default:
-                return true;
-        }
-    }
-
-    private void updateStatistics() {
-        int totalRentals = rentals.size();
-        int activeRentals = (int) rentals.stream().filter(r -> !r.isReturned()).count();
-        double totalRevenue = rentals.stream().mapToDouble(Rental::getTotalPrice).sum();
-        
-        statsLabel.setText(String.format(
-            "Total Rentals: %d | Active Rentals: %d | Total Revenue: %s",
-            totalRentals, activeRentals, currencyFormatter.format(totalRevenue)
-        ));
-    }
-
-    private class CarListRenderer extends DefaultListCellRenderer {
-        @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            if (value instanceof Car) {
-                Car car = (Car) value;
-                setText(String.format("%s - %s %s (%s)", 
-                    car.getCarId(), 
-                    car.getBrand(), 
-                    car.getModel(),
-                    car.isAvailable() ? "Available" : "Rented"));
-                
-                setFont(new Font("Arial", Font.PLAIN, 14));
-                setForeground(TEXT_COLOR);
-                
-                if (isSelected) {
-                    setBackground(SECONDARY_COLOR);
-                    setForeground(Color.WHITE);
-                } else {
-                    setBackground(car.isAvailable() ? Color.WHITE : new Color(255, 240, 240));
-                }
-                
-                // Add padding
-                setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
-            }
-            return this;
-        }
-    }
-
-    private class RentalListRenderer extends DefaultListCellRenderer {
-        private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-
-        @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            if (value instanceof Rental) {
-                Rental rental = (Rental) value;
-                Car car = rental.getCar();
-                Customer customer = rental.getCustomer();
-                
-                String status = rental.isReturned() ? "Returned" : "Active";
-                Color statusColor = rental.isReturned() ? SUCCESS_COLOR : WARNING_COLOR;
-                
-                setText(String.format("<html><b>%s</b> - %s %s<br>Customer: %s (%s)<br>Rented on: %s<br>Duration: %d days<br>Price: %s<br>Status: <font color='%s'>%s</font></html>",
-                    car.getCarId(),
-                    car.getBrand(),
-                    car.getModel(),
-                    customer.getName(),
-                    customer.getPhoneNumber(),
-                    rental.getRentalDate().format(formatter),
-                    rental.getDays(),
-                    currencyFormatter.format(rental.getTotalPrice()),
-                    String.format("#%02x%02x%02x", statusColor.getRed(), statusColor.getGreen(), statusColor.getBlue()),
-                    status
-                ));
-                
-                setFont(new Font("Arial", Font.PLAIN, 14));
-                setForeground(TEXT_COLOR);
-                
-                if (isSelected) {
-                    setBackground(SECONDARY_COLOR);
-                    setForeground(Color.WHITE);
-                } else {
-                    setBackground(rental.isReturned() ? new Color(240, 255, 240) : new Color(255, 240, 240));
-                }
-                
-                setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
-            }
-            return this;
-        }
-    }
-
-    public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        SwingUtilities.invokeLater(() -> new CarRentalSystem());
-    }
+import javax.swing.*;
+import javax.swing.border.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+
+public class CarRentalSystem {
+    private JFrame frame;
+    private LazyListModel<Car> carListModel;
+    private LazyListModel<Rental> rentalListModel;
+    private JList<Car> carJList;
+    private JList<Rental> rentalJList;
+    private final RentalService service;
+    private JTextField searchField;
+    private JComboBox<String> filterComboBox;
+    private JLabel statsLabel;
+    private LocalDateTime customRangeStart;
+    private LocalDateTime customRangeEnd;
+    private Timer searchDebounce;
+    private Map<Car, Double> dayRates = new IdentityHashMap<>();
+    private SwingWorker<List<Rental>, Void> pendingQuery;
+    private SwingWorker<CarRows, Void> pendingCarRows;
+    // Set by the first change after a refresh, from any thread; cleared when the refresh runs
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private Timer refreshTimer;
+    private final Metrics.Operation filterMetrics;
+    private final Metrics.Operation updateStatisticsMetrics;
+    private final Metrics.Operation refreshCarsMetrics;
+    
+    private static final String DATA_DIRECTORY = "rental-data";
+    private static final String CUSTOM_RANGE = "Date Range...";
+    private static final int SEARCH_DEBOUNCE_MILLIS = 150;
+    private static final int REFRESH_COALESCE_MILLIS = 100;
+    private static final int METRICS_PORT = 9404;
+    private static final String METRICS_MBEAN = "CarRentalSystem:type=Metrics";
+    private static final Logger LOG = Logger.getLogger(CarRentalSystem.class.getName());
+
+    // Sized like a typical row; used to fix the cell height of both lists
+    private static final Rental PROTOTYPE_RENTAL = new Rental(
+        new Car("C0000", "Prototype Brand", "Prototype Model", 10000.0),
+        new Customer("CUS0", "Prototype Customer Name", "+91 00000 00000"), 30);
+
+    // Currency formatter for Indian Rupees
+    private static final NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("en", "IN"));
+    
+    // Cell styling shared by both list renderers, so painting a cell allocates none of it
+    private static final Font CELL_FONT = new Font("Arial", Font.PLAIN, 14);
+    private static final int CELL_PADDING_X = 10;
+    private static final int CELL_PADDING_Y = 5;
+    private static final Border CELL_BORDER = BorderFactory.createEmptyBorder(CELL_PADDING_Y, CELL_PADDING_X, CELL_PADDING_Y, CELL_PADDING_X);
+    private static final Color RENTED_BACKGROUND = new Color(255, 240, 240);
+    private static final Color RETURNED_BACKGROUND = new Color(240, 255, 240);
+    private static final Color OVERDUE_BACKGROUND = new Color(255, 215, 180);
+    private static final String STATUS_LABEL = "Status: ";
+    private static final int CACHED_RENTAL_ROWS = 1024;
+
+    // Color scheme
+    private static final Color PRIMARY_COLOR = new Color(41, 128, 185);    // Blue
+    private static final Color SECONDARY_COLOR = new Color(52, 152, 219);  // Light Blue
+    private static final Color BACKGROUND_COLOR = new Color(236, 240, 241); // Light Gray
+    private static final Color TEXT_COLOR = new Color(44, 62, 80);         // Dark Blue
+    private static final Color SUCCESS_COLOR = new Color(46, 204, 113);    // Green
+    private static final Color WARNING_COLOR = new Color(231, 76, 60);     // Red
+
+    public CarRentalSystem(RentalService service) {
+        this.service = service;
+        this.filterMetrics = service.getMetrics().operation("ui_filter_rentals");
+        this.updateStatisticsMetrics = service.getMetrics().operation("ui_update_statistics");
+        this.refreshCarsMetrics = service.getMetrics().operation("ui_refresh_cars");
+
+        // Setup GUI
+        frame = new JFrame("Car Rental System");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(1000, 600);
+        frame.setLayout(new BorderLayout(10, 10));
+        frame.getContentPane().setBackground(BACKGROUND_COLOR);
+
+        // Create title panel
+        JPanel titlePanel = new JPanel();
+        titlePanel.setBackground(PRIMARY_COLOR);
+        titlePanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        JLabel titleLabel = new JLabel("Car Rental System", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
+        titleLabel.setForeground(Color.WHITE);
+        titlePanel.add(titleLabel);
+        frame.add(titlePanel, BorderLayout.NORTH);
+
+        // Create main content panel
+        JPanel contentPanel = new JPanel(new BorderLayout(10, 0));
+        contentPanel.setBackground(BACKGROUND_COLOR);
+
+        // Left panel - Car List
+        JPanel leftPanel = new JPanel(new BorderLayout());
+        leftPanel.setBackground(BACKGROUND_COLOR);
+        
+        JLabel carListLabel = new JLabel("Available Cars", SwingConstants.CENTER);
+        carListLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        carListLabel.setForeground(TEXT_COLOR);
+        leftPanel.add(carListLabel, BorderLayout.NORTH);
+
+        carListModel = new LazyListModel<>();
+        refreshCarList();
+
+        carJList = new JList<>(carListModel);
+        carJList.setCellRenderer(new CarListRenderer());
+        carJList.setPrototypeCellValue(PROTOTYPE_RENTAL.getCar());
+        carJList.setBackground(Color.WHITE);
+        // Several cars can be selected to rent or return them as one group
+        carJList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        carJList.setFont(new Font("Arial", Font.PLAIN, 14));
+        
+        JScrollPane carScrollPane = new JScrollPane(carJList);
+        carScrollPane.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createEmptyBorder(10, 10, 10, 10),
+            BorderFactory.createLineBorder(PRIMARY_COLOR, 2)
+        ));
+        leftPanel.add(carScrollPane, BorderLayout.CENTER);
+
+        // Right panel - Rental History
+        JPanel rightPanel = new JPanel(new BorderLayout());
+        rightPanel.setBackground(BACKGROUND_COLOR);
+
+        // Create rental history header panel
+        JPanel rentalHeaderPanel = new JPanel(new BorderLayout());
+        rentalHeaderPanel.setBackground(BACKGROUND_COLOR);
+        
+        JLabel rentalListLabel = new JLabel("Rental History", SwingConstants.CENTER);
+        rentalListLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        rentalListLabel.setForeground(TEXT_COLOR);
+        rentalHeaderPanel.add(rentalListLabel, BorderLayout.NORTH);
+
+        // Create search and filter panel
+        JPanel searchFilterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchFilterPanel.setBackground(BACKGROUND_COLOR);
+        
+        searchField = new JTextField(15);
+        searchField.setFont(new Font("Arial", Font.PLAIN, 14));
+        // Typing restarts the debounce timer; the query runs once the user pauses
+        searchDebounce = new Timer(SEARCH_DEBOUNCE_MILLIS, e -> filterRentals());
+        searchDebounce.setRepeats(false);
+        searchField.addKeyListener(new KeyAdapter() {
+            public void keyReleased(KeyEvent e) {
+                searchDebounce.restart();
+            }
+        });
+        
+        String[] filterOptions = {"All", "Active", "Returned", "Last 7 Days", "Last 30 Days", CUSTOM_RANGE};
+        filterComboBox = new JComboBox<>(filterOptions);
+        filterComboBox.setFont(new Font("Arial", Font.PLAIN, 14));
+        filterComboBox.addActionListener(e -> {
+            if (CUSTOM_RANGE.equals(filterComboBox.getSelectedItem()) && !chooseCustomRange()) {
+                filterComboBox.setSelectedIndex(0);
+                return;
+            }
+            filterRentals();
+        });
+        
+        searchFilterPanel.add(new JLabel("Search: "));
+        searchFilterPanel.add(searchField);
+        searchFilterPanel.add(new JLabel("Filter: "));
+        searchFilterPanel.add(filterComboBox);
+        
+        rentalHeaderPanel.add(searchFilterPanel, BorderLayout.CENTER);
+        rightPanel.add(rentalHeaderPanel, BorderLayout.NORTH);
+
+        // Create rental list
+        rentalListModel = new LazyListModel<>();
+        rentalJList = new JList<>(rentalListModel);
+        rentalJList.setCellRenderer(new RentalListRenderer());
+        // Every cell gets the prototype's size, so JList only measures and renders visible rows
+        rentalJList.setPrototypeCellValue(PROTOTYPE_RENTAL);
+        rentalJList.setBackground(Color.WHITE);
+        rentalJList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        rentalJList.setFont(new Font("Arial", Font.PLAIN, 14));
+        
+        JScrollPane rentalScrollPane = new JScrollPane(rentalJList);
+        rentalScrollPane.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createEmptyBorder(10, 10, 10, 10),
+            BorderFactory.createLineBorder(PRIMARY_COLOR, 2)
+        ));
+        rightPanel.add(rentalScrollPane, BorderLayout.CENTER);
+
+        // Create statistics panel
+        JPanel statsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        statsPanel.setBackground(BACKGROUND_COLOR);
+        statsLabel = new JLabel();
+        statsLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        statsLabel.setForeground(TEXT_COLOR);
+        statsPanel.add(statsLabel);
+        rightPanel.add(statsPanel, BorderLayout.SOUTH);
+
+        // Add panels to content panel
+        contentPanel.add(leftPanel, BorderLayout.WEST);
+        contentPanel.add(rightPanel, BorderLayout.CENTER);
+        frame.add(contentPanel, BorderLayout.CENTER);
+
+        // Create buttons panel
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
+        buttonPanel.setBackground(BACKGROUND_COLOR);
+        
+        JButton rentButton = createStyledButton("Rent Car", SUCCESS_COLOR);
+        JButton returnButton = createStyledButton("Return Car", WARNING_COLOR);
+        JButton addCarButton = createStyledButton("Add New Car", SECONDARY_COLOR);
+        JButton reserveButton = createStyledButton("Reserve Car", PRIMARY_COLOR);
+        JButton reservationsButton = createStyledButton("Reservations", PRIMARY_COLOR);
+        JButton freeCarsButton = createStyledButton("Free Cars", SECONDARY_COLOR);
+        JButton importButton = createStyledButton("Import", SECONDARY_COLOR);
+        JButton exportButton = createStyledButton("Export", SECONDARY_COLOR);
+        JButton reportButton = createStyledButton("Reports", PRIMARY_COLOR);
+
+        rentButton.addActionListener(e -> rentCar());
+        returnButton.addActionListener(e -> returnCar());
+        addCarButton.addActionListener(e -> addNewCar());
+        reserveButton.addActionListener(e -> reserveCar());
+        reservationsButton.addActionListener(e -> manageReservation());
+        freeCarsButton.addActionListener(e -> showFreeCars());
+        importButton.addActionListener(e -> importFile());
+        exportButton.addActionListener(e -> exportFile());
+        reportButton.addActionListener(e -> showReport());
+
+        buttonPanel.add(rentButton);
+        buttonPanel.add(returnButton);
+        buttonPanel.add(addCarButton);
+        buttonPanel.add(reserveButton);
+        buttonPanel.add(reservationsButton);
+        buttonPanel.add(freeCarsButton);
+        buttonPanel.add(importButton);
+        buttonPanel.add(exportButton);
+        buttonPanel.add(reportButton);
+        frame.add(buttonPanel, BorderLayout.SOUTH);
+
+        // Center the frame on screen
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+
+        // Bookings can come from any client of the service, not just this frame. A burst of
+        // them posts one event and refreshes the lists once, at most every REFRESH_COALESCE_MILLIS.
+        refreshTimer = new Timer(REFRESH_COALESCE_MILLIS, e -> {
+            refreshPending.set(false);
+            refreshCarList();
+            refreshRentalList();
+        });
+        refreshTimer.setRepeats(false);
+        service.addChangeListener(() -> {
+            if (refreshPending.compareAndSet(false, true)) SwingUtilities.invokeLater(refreshTimer::start);
+        });
+        // Only the rows change colour, so a repaint is enough; the renderer asks which are overdue
+        service.addOverdueListener(rental -> SwingUtilities.invokeLater(rentalJList::repaint));
+        refreshRentalList();
+    }
+
+    private JButton createStyledButton(String text, Color color) {
+        JButton button = new JButton(text);
+        button.setFont(new Font("Arial", Font.BOLD, 14));
+        button.setForeground(Color.WHITE);
+        button.setBackground(color);
+        button.setFocusPainted(false);
+        button.setBorderPainted(false);
+        button.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        
+        // Add hover effect
+        button.addMouseListener(new MouseAdapter() {
+            public void mouseEntered(MouseEvent e) {
+                button.setBackground(color.darker());
+            }
+            public void mouseExited(MouseEvent e) {
+                button.setBackground(color);
+            }
+        });
+        
+        return button;
+    }
+
+    private void rentCar() {
+        List<Car> selectedCars = carJList.getSelectedValuesList();
+        if (selectedCars.size() > 1) {
+            rentGroup(selectedCars);
+            return;
+        }
+        Car selectedCar = carJList.getSelectedValue();
+        if (selectedCar == null || !selectedCar.isAvailable()) {
+            JOptionPane.showMessageDialog(frame, "Please select an available car.");
+            return;
+        }
+
+        String name = JOptionPane.showInputDialog(frame, "Enter customer name:");
+        if (name == null || name.trim().isEmpty()) return;
+
+        String phone = JOptionPane.showInputDialog(frame, "Enter customer phone number:");
+        if (phone == null || phone.trim().isEmpty()) return;
+
+        String daysStr = JOptionPane.showInputDialog(frame, "Enter number of days:");
+        int days;
+        try {
+            days = Integer.parseInt(daysStr);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "Please enter a valid number of days.");
+            return;
+        }
+
+        double price;
+        try {
+            price = service.quote(selectedCar.getCarId(), days);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(frame, e.getMessage());
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(frame, 
+            String.format("Total price: %s\nConfirm rental?", currencyFormatter.format(price)), 
+            "Confirm Rental", 
+            JOptionPane.YES_NO_OPTION);
+
+        if (confirm == JOptionPane.YES_OPTION) {
+            try {
+                service.rentCar(selectedCar.getCarId(), name, phone, days);
+                JOptionPane.showMessageDialog(frame, "Car rented successfully!");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                JOptionPane.showMessageDialog(frame, e.getMessage());
+            }
+        }
+    }
+
+    // One set of dialogs for the whole group; either every car is rented or none is
+    private void rentGroup(List<Car> selectedCars) {
+        for (Car car : selectedCars) {
+            if (!car.isAvailable()) {
+                JOptionPane.showMessageDialog(frame, "Car " + car.getCarId() + " is not available. Please select available cars only.");
+                return;
+            }
+        }
+
+        String name = JOptionPane.showInputDialog(frame, "Enter customer name for all " + selectedCars.size() + " cars:");
+        if (name == null || name.trim().isEmpty()) return;
+
+        String phone = JOptionPane.showInputDialog(frame, "Enter customer phone number:");
+        if (phone == null || phone.trim().isEmpty()) return;
+
+        String daysStr = JOptionPane.showInputDialog(frame, "Enter number of days:");
+        int days;
+        try {
+            days = Integer.parseInt(daysStr);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "Please enter a valid number of days.");
+            return;
+        }
+
+        double total = 0;
+        List<RentRequest> requests = new ArrayList<>(selectedCars.size());
+        try {
+            double[] prices = service.quote(selectedCars, LocalDate.now(), days);
+            for (int i = 0; i < prices.length; i++) {
+                total += prices[i];
+                requests.add(new RentRequest(selectedCars.get(i).getCarId(), name, phone, days));
+            }
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(frame, e.getMessage());
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(frame,
+            String.format("%d cars, total price: %s\nConfirm rental?", selectedCars.size(), currencyFormatter.format(total)),
+            "Confirm Group Rental",
+            JOptionPane.YES_NO_OPTION);
+
+        if (confirm == JOptionPane.YES_OPTION) {
+            try {
+                service.rentGroup(requests);
+                JOptionPane.showMessageDialog(frame, selectedCars.size() + " cars rented successfully!");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                JOptionPane.showMessageDialog(frame, "No cars were rented. " + e.getMessage());
+            }
+        }
+    }
+
+    private void returnCar() {
+        List<Car> selectedCars = carJList.getSelectedValuesList();
+        if (selectedCars.size() > 1) {
+            returnGroup(selectedCars);
+            return;
+        }
+        Car selectedCar = carJList.getSelectedValue();
+        if (selectedCar == null || selectedCar.isAvailable()) {
+            JOptionPane.showMessageDialog(frame, "Please select a rented car.");
+            return;
+        }
+
+        try {
+            Rental rental = service.returnCar(selectedCar.getCarId());
+            String message = "Car returned by " + rental.getCustomer().getName();
+            if (rental.getLateFee() > 0) {
+                message += "\nReturned late: a late fee of " + currencyFormatter.format(rental.getLateFee()) + " is due.";
+            }
+            JOptionPane.showMessageDialog(frame, message);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            JOptionPane.showMessageDialog(frame, e.getMessage());
+        }
+    }
+
+    private void returnGroup(List<Car> selectedCars) {
+        List<String> carIds = new ArrayList<>(selectedCars.size());
+        for (Car car : selectedCars) carIds.add(car.getCarId());
+        try {
+            List<Rental> returned = service.returnGroup(carIds);
+            double lateFees = 0;
+            for (Rental rental : returned) lateFees += rental.getLateFee();
+            JOptionPane.showMessageDialog(frame, returned.size() + " cars returned."
+                + (lateFees > 0 ? "\nLate fees due: " + currencyFormatter.format(lateFees) : ""));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            JOptionPane.showMessageDialog(frame, "No cars were returned. " + e.getMessage());
+        }
+    }
+
+    private void addNewCar() {
+        String carId = JOptionPane.showInputDialog(frame, "Enter car ID:");
+        if (carId == null || carId.trim().isEmpty()) return;
+
+        String brand = JOptionPane.showInputDialog(frame, "Enter car brand:");
+        if (brand == null || brand.trim().isEmpty()) return;
+
+        String model = JOptionPane.showInputDialog(frame, "Enter car model:");
+        if (model == null || model.trim().isEmpty()) return;
+
+        String priceStr = JOptionPane.showInputDialog(frame, "Enter base price per day:");
+        double price;
+        try {
+            price = Double.parseDouble(priceStr);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "Please enter a valid price.");
+            return;
+        }
+
+        try {
+            service.addCar(carId, brand, model, price);
+            JOptionPane.showMessageDialog(frame, "New car added successfully!");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            JOptionPane.showMessageDialog(frame, e.getMessage());
+        }
+    }
+
+    private void reserveCar() {
+        Car selectedCar = carJList.getSelectedValue();
+        if (selectedCar == null) {
+            JOptionPane.showMessageDialog(frame, "Please select a car to reserve.");
+            return;
+        }
+
+        String name = JOptionPane.showInputDialog(frame, "Enter customer name:");
+        if (name == null || name.trim().isEmpty()) return;
+
+        String phone = JOptionPane.showInputDialog(frame, "Enter customer phone number:");
+        if (phone == null || phone.trim().isEmpty()) return;
+
+        LocalDate[] dates = askDates(LocalDate.now().plusDays(1));
+        if (dates == null) return;
+
+        double price;
+        try {
+            price = service.quote(selectedCar.getCarId(), dates[0], (int) ChronoUnit.DAYS.between(dates[0], dates[1]));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(frame, e.getMessage());
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(frame,
+            String.format("Total price: %s\nConfirm reservation?", currencyFormatter.format(price)),
+            "Confirm Reservation",
+            JOptionPane.YES_NO_OPTION);
+
+        if (confirm == JOptionPane.YES_OPTION) {
+            try {
+                Reservation reservation = service.reserveCar(selectedCar.getCarId(), name, phone, dates[0], dates[1]);
+                JOptionPane.showMessageDialog(frame, "Car reserved. Reservation ID: " + reservation.getReservationId());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                JOptionPane.showMessageDialog(frame, e.getMessage());
+            }
+        }
+    }
+
+    // Picks up or cancels one of the open reservations
+    private void manageReservation() {
+        List<Reservation> reservations = service.getReservations();
+        if (reservations.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "There are no open reservations.");
+            return;
+        }
+        Reservation reservation = (Reservation) JOptionPane.showInputDialog(frame, "Select a reservation:",
+            "Reservations", JOptionPane.PLAIN_MESSAGE, null, reservations.toArray(), reservations.get(0));
+        if (reservation == null) return;
+
+        String[] actions = {"Pick Up", "Cancel Reservation", "Close"};
+        int action = JOptionPane.showOptionDialog(frame, reservation + "\nTotal price: " + currencyFormatter.format(reservation.getTotalPrice()),
+            "Reservation " + reservation.getReservationId(), JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE,
+            null, actions, actions[0]);
+        try {
+            if (action == 0) {
+                service.startReservation(reservation.getReservationId());
+                JOptionPane.showMessageDialog(frame, "Car " + reservation.getCar().getCarId() + " picked up by " + reservation.getCustomer().getName());
+            } else if (action == 1) {
+                service.cancelReservation(reservation.getReservationId());
+                JOptionPane.showMessageDialog(frame, "Reservation cancelled.");
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            JOptionPane.showMessageDialog(frame, e.getMessage());
+        }
+    }
+
+    private void showFreeCars() {
+        LocalDate[] dates = askDates(LocalDate.now());
+        if (dates == null) return;
+        List<Car> free = service.findFreeCars(dates[0], dates[1]);
+        StringBuilder message = new StringBuilder();
+        message.append(free.size()).append(" car(s) free from ").append(dates[0]).append(" to ").append(dates[1].minusDays(1)).append(":");
+        for (Car car : free) {
+            message.append("\n").append(car.getCarId()).append(" - ").append(car.getBrand()).append(" ").append(car.getModel());
+        }
+        JOptionPane.showMessageDialog(frame, message.toString());
+    }
+
+    // Loads cars or rentals from a .csv or binary file in the background, then reports what was rejected
+    private void importFile() {
+        String[] kinds = { "Cars", "Rentals" };
+        int kind = JOptionPane.showOptionDialog(frame, "What does the file contain?", "Import",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, kinds, kinds[0]);
+        if (kind < 0) return;
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+        Path file = chooser.getSelectedFile().toPath();
+        new SwingWorker<BulkTransfer.Report, Void>() {
+            @Override
+            protected BulkTransfer.Report doInBackground() throws IOException {
+                return kind == 0 ? BulkTransfer.importCars(service, file) : BulkTransfer.importRentals(service, file);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    BulkTransfer.Report report = get();
+                    StringBuilder message = new StringBuilder();
+                    message.append("Imported ").append(report.getImported()).append(", rejected ").append(report.getRejected()).append(".");
+                    for (String problem : report.getProblems().subList(0, Math.min(10, report.getProblems().size()))) {
+                        message.append("\n").append(problem);
+                    }
+                    JOptionPane.showMessageDialog(frame, message.toString());
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    JOptionPane.showMessageDialog(frame, "Import failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void exportFile() {
+        String[] kinds = { "Cars", "Rentals" };
+        int kind = JOptionPane.showOptionDialog(frame, "What should be exported?", "Export",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, kinds, kinds[0]);
+        if (kind < 0) return;
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+        Path file = chooser.getSelectedFile().toPath();
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws IOException {
+                return kind == 0 ? BulkTransfer.exportCars(service, file) : BulkTransfer.exportRentals(service, file);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(frame, "Exported " + get() + " " + kinds[kind].toLowerCase(Locale.ROOT) + ".");
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    JOptionPane.showMessageDialog(frame, "Export failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    // The report is built off the EDT and shown when it is ready
+    private void showReport() {
+        service.generateReport().whenComplete((report, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(frame, "Report failed: " + error.getMessage());
+                return;
+            }
+            JTextArea text = new JTextArea(formatReport(report), 25, 60);
+            text.setEditable(false);
+            text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            JOptionPane.showMessageDialog(frame, new JScrollPane(text), "Rental Report", JOptionPane.PLAIN_MESSAGE);
+        }));
+    }
+
+    private String formatReport(RentalReport report) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Rentals: %d   Revenue: %s   Average length: %.1f days%n",
+            report.getRentals(), currencyFormatter.format(report.getRevenue()), report.getAverageDays()));
+        text.append(String.format("%nRevenue by brand%n"));
+        report.getRevenueByBrand().forEach((brand, revenue) ->
+            text.append(String.format("  %-30s %15s%n", brand, currencyFormatter.format(revenue))));
+        text.append(String.format("%nRevenue by model%n"));
+        report.getRevenueByModel().forEach((model, revenue) ->
+            text.append(String.format("  %-30s %15s%n", model, currencyFormatter.format(revenue))));
+        text.append(String.format("%nTop customers%n"));
+        for (RentalReport.CustomerTotal customer : report.getTopCustomers()) {
+            text.append(String.format("  %-20s %-14s %5d rentals %15s%n", customer.getName(), customer.getPhoneNumber(),
+                customer.getRentals(), currencyFormatter.format(customer.getRevenue())));
+        }
+        text.append(String.format("%nUtilization by car%n"));
+        report.getUtilizationByCar().forEach((car, share) ->
+            text.append(String.format("  %-30s %5.1f%%%n", car.getCarId() + " " + car.getBrand() + " " + car.getModel(), share * 100)));
+        text.append(String.format("%nRevenue by day%n"));
+        report.getRevenueByDay().forEach((day, revenue) ->
+            text.append(String.format("  %-30s %15s%n", day, currencyFormatter.format(revenue))));
+        return text.toString();
+    }
+
+    // First and last day (inclusive) from the user, returned as a [start, end) pair
+    private LocalDate[] askDates(LocalDate defaultStart) {
+        String fromText = JOptionPane.showInputDialog(frame, "From date (yyyy-MM-dd):", defaultStart.toString());
+        if (fromText == null) return null;
+        String toText = JOptionPane.showInputDialog(frame, "To date (yyyy-MM-dd):", defaultStart.plusDays(2).toString());
+        if (toText == null) return null;
+        try {
+            LocalDate fromDate = LocalDate.parse(fromText.trim());
+            LocalDate toDate = LocalDate.parse(toText.trim());
+            if (toDate.isBefore(fromDate)) {
+                JOptionPane.showMessageDialog(frame, "The end date must not be before the start date.");
+                return null;
+            }
+            return new LocalDate[] { fromDate, toDate.plusDays(1) };
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(frame, "Please enter dates as yyyy-MM-dd.");
+            return null;
+        }
+    }
+
+    // The car list and today's day rate for each car, built together off the EDT
+    private static final class CarRows {
+        final List<Car> cars;
+        final Map<Car, Double> rates;
+
+        CarRows(List<Car> cars, Map<Car, Double> rates) {
+            this.cars = cars;
+            this.rates = rates;
+        }
+    }
+
+    // Copies the fleet and quotes it in one pass on a worker thread; only the newest build
+    // replaces the list and the rates, together
+    private void refreshCarList() {
+        if (pendingCarRows != null) {
+            pendingCarRows.cancel(true);
+        }
+        long started = System.nanoTime();
+        pendingCarRows = new SwingWorker<CarRows, Void>() {
+            @Override
+            protected CarRows doInBackground() {
+                List<Car> cars = service.getCars();
+                double[] rates = service.quote(cars, LocalDate.now(), 1);
+                Map<Car, Double> latestRates = new IdentityHashMap<>();
+                for (int i = 0; i < rates.length; i++) {
+                    latestRates.put(cars.get(i), rates[i]);
+                }
+                return new CarRows(cars, latestRates);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || pendingCarRows != this) {
+                    return;
+                }
+                pendingCarRows = null;
+                try {
+                    CarRows rows = get();
+                    dayRates = rows.rates;
+                    carListModel.setRows(rows.cars);
+                } catch (InterruptedException | ExecutionException e) {
+                    refreshCarsMetrics.failed();
+                    LOG.log(Level.WARNING, "Car list refresh failed", e);
+                }
+                refreshCarsMetrics.record(started);
+            }
+        };
+        pendingCarRows.execute();
+    }
+
+    private void refreshRentalList() {
+        filterRentals();
+        updateStatistics();
+    }
+
+    private void filterRentals() {
+        String searchText = searchField.getText().toLowerCase(Locale.ROOT);
+        String filterOption = (String) filterComboBox.getSelectedItem();
+
+        // Date filters become one range query on the service's time index.
+        // "Last N Days" keeps rentals less than N + 1 whole days old, as before.
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        switch (filterOption) {
+            case "Last 7 Days":
+                from = now.minusDays(8);
+                break;
+            case "Last 30 Days":
+                from = now.minusDays(31);
+                break;
+            case CUSTOM_RANGE:
+                from = customRangeStart;
+                to = customRangeEnd;
+                break;
+            default:
+                break;
+        }
+        Boolean returned = null;
+        if ("Active".equals(filterOption)) returned = Boolean.FALSE;
+        if ("Returned".equals(filterOption)) returned = Boolean.TRUE;
+
+        searchDebounce.stop();
+        if (pendingQuery != null) {
+            pendingQuery.cancel(true);
+        }
+        // The query runs off the EDT; only the newest one may replace the list, in a single setRows
+        LocalDateTime rangeStart = from;
+        LocalDateTime rangeEnd = to;
+        Boolean returnedFilter = returned;
+        // Measured from here until the new rows are in the list
+        long started = System.nanoTime();
+        pendingQuery = new SwingWorker<List<Rental>, Void>() {
+            @Override
+            protected List<Rental> doInBackground() {
+                return service.findRentals(searchText, rangeStart, rangeEnd, returnedFilter);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || pendingQuery != this) {
+                    return;
+                }
+                pendingQuery = null;
+                try {
+                    rentalListModel.setRows(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    filterMetrics.failed();
+                    LOG.log(Level.WARNING, "Rental search failed", e);
+                }
+                filterMetrics.record(started);
+            }
+        };
+        pendingQuery.execute();
+    }
+
+    // Asks for an inclusive range of days; false if the user cancels or enters a bad date
+    private boolean chooseCustomRange() {
+        String fromText = JOptionPane.showInputDialog(frame, "From date (yyyy-MM-dd):",
+            customRangeStart == null ? LocalDate.now().minusDays(30).toString() : customRangeStart.toLocalDate().toString());
+        if (fromText == null) return false;
+        String toText = JOptionPane.showInputDialog(frame, "To date (yyyy-MM-dd):",
+            customRangeEnd == null ? LocalDate.now().toString() : customRangeEnd.toLocalDate().minusDays(1).toString());
+        if (toText == null) return false;
+        try {
+            LocalDate fromDate = LocalDate.parse(fromText.trim());
+            LocalDate toDate = LocalDate.parse(toText.trim());
+            if (toDate.isBefore(fromDate)) {
+                JOptionPane.showMessageDialog(frame, "The end date must not be before the start date.");
+                return false;
+            }
+            customRangeStart = fromDate.atStartOfDay();
+            customRangeEnd = toDate.plusDays(1).atStartOfDay();
+            return true;
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(frame, "Please enter dates as yyyy-MM-dd.");
+            return false;
+        }
+    }
+
+    private void updateStatistics() {
+        long started = System.nanoTime();
+        RentalStatistics stats = service.getStatistics();
+        
+        statsLabel.setText(String.format(
+            "Total Rentals: %d | Active Rentals: %d | Total Revenue: %s",
+            stats.getTotalRentals(), stats.getActiveRentals(), currencyFormatter.format(stats.getTotalRevenue())
+        ));
+        updateStatisticsMetrics.record(started);
+    }
+
+    @SuppressWarnings("serial")
+    private class CarListRenderer extends DefaultListCellRenderer {
+        // Row text per car, rebuilt when its availability or day rate changes
+        private final Map<Car, CarText> texts = new IdentityHashMap<>();
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            if (!(value instanceof Car)) {
+                return super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            }
+            Car car = (Car) value;
+            boolean available = car.isAvailable();
+            Double rate = dayRates.get(car);
+            CarText text = texts.get(car);
+            if (text == null || text.available != available || !Objects.equals(text.rate, rate)) {
+                text = new CarText(available, rate, String.format("%s - %s %s (%s)%s",
+                    car.getCarId(),
+                    car.getBrand(),
+                    car.getModel(),
+                    available ? "Available" : "Rented",
+                    rate == null ? "" : " - " + currencyFormatter.format(rate) + "/day"));
+                texts.put(car, text);
+            }
+            super.getListCellRendererComponent(list, text.text, index, isSelected, cellHasFocus);
+
+            setFont(CELL_FONT);
+            setForeground(TEXT_COLOR);
+
+            if (isSelected) {
+                setBackground(SECONDARY_COLOR);
+                setForeground(Color.WHITE);
+            } else {
+                setBackground(available ? Color.WHITE : RENTED_BACKGROUND);
+            }
+
+            // Add padding
+            setBorder(CELL_BORDER);
+            return this;
+        }
+    }
+
+    // Paints the six text lines of a rental directly instead of handing an HTML
+    // string to a JLabel, which Swing would re-parse on every paint. The lines
+    // are built once per rental and rebuilt only when its return or overdue state
+    // changes. Overdue rentals, as the service last reported them, get their own
+    // background.
+    @SuppressWarnings("serial")
+    private class RentalListRenderer extends JComponent implements ListCellRenderer<Object> {
+        private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        private final Font boldFont = CELL_FONT.deriveFont(Font.BOLD);
+        private final Map<?, ?> textHints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        private final Map<Rental, RowText> rows = new LinkedHashMap<Rental, RowText>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Rental, RowText> eldest) {
+                return size() > CACHED_RENTAL_ROWS;
+            }
+        };
+        private RowText row;
+        private boolean selected;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            Rental rental = (Rental) value;
+            boolean overdue = service.isOverdue(rental);
+            row = rows.get(rental);
+            if (row == null || row.returned != rental.isReturned() || row.overdue != overdue) {
+                row = new RowText(rental, overdue, formatter);
+                rows.put(rental, row);
+            }
+            selected = isSelected;
+            setOpaque(true);
+            setBackground(isSelected ? SECONDARY_COLOR
+                : row.returned ? RETURNED_BACKGROUND : row.overdue ? OVERDUE_BACKGROUND : RENTED_BACKGROUND);
+            return this;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            FontMetrics plain = getFontMetrics(CELL_FONT);
+            int width = getFontMetrics(boldFont).stringWidth(row.carId) + plain.stringWidth(row.vehicle);
+            for (int line = 1; line < row.lines.length; line++) {
+                width = Math.max(width, plain.stringWidth(row.lines[line]));
+            }
+            width = Math.max(width, plain.stringWidth(STATUS_LABEL) + plain.stringWidth(row.status));
+            return new Dimension(CELL_PADDING_X * 2 + width,
+                CELL_PADDING_Y * 2 + plain.getHeight() * (row.lines.length + 1));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            if (textHints != null) ((Graphics2D) g).addRenderingHints(textHints);
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+
+            FontMetrics plain = getFontMetrics(CELL_FONT);
+            Color textColor = selected ? Color.WHITE : TEXT_COLOR;
+            int y = CELL_PADDING_Y + plain.getAscent();
+
+            g.setColor(textColor);
+            g.setFont(boldFont);
+            g.drawString(row.carId, CELL_PADDING_X, y);
+            g.setFont(CELL_FONT);
+            g.drawString(row.vehicle, CELL_PADDING_X + getFontMetrics(boldFont).stringWidth(row.carId), y);
+            for (int line = 1; line < row.lines.length; line++) {
+                y += plain.getHeight();
+                g.drawString(row.lines[line], CELL_PADDING_X, y);
+            }
+            y += plain.getHeight();
+            g.drawString(STATUS_LABEL, CELL_PADDING_X, y);
+            g.setColor(row.returned ? SUCCESS_COLOR : WARNING_COLOR);
+            g.drawString(row.status, CELL_PADDING_X + plain.stringWidth(STATUS_LABEL), y);
+        }
+
+        // Cell renderers are stamped, not laid out; skip the bookkeeping like DefaultListCellRenderer does
+        @Override
+        public void revalidate() {}
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {}
+
+        @Override
+        protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {}
+    }
+
+    private static final class CarText {
+        final boolean available;
+        final Double rate;
+        final String text;
+
+        CarText(boolean available, Double rate, String text) {
+            this.available = available;
+            this.rate = rate;
+            this.text = text;
+        }
+    }
+
+    private static final class RowText {
+        final boolean returned;
+        final boolean overdue;
+        final String carId;
+        final String vehicle;
+        final String status;
+        // lines[0] is the car line, drawn as carId + vehicle
+        final String[] lines;
+
+        RowText(Rental rental, boolean overdue, DateTimeFormatter formatter) {
+            Car car = rental.getCar();
+            Customer customer = rental.getCustomer();
+            returned = rental.isReturned();
+            this.overdue = overdue;
+            carId = car.getCarId();
+            vehicle = " - " + car.getBrand() + " " + car.getModel();
+            if (returned) {
+                status = rental.getLateFee() > 0 ? "Returned late, fee " + currencyFormatter.format(rental.getLateFee()) : "Returned";
+            } else {
+                status = overdue ? "Overdue since " + rental.getDueDate().format(formatter) : "Active";
+            }
+            lines = new String[] {
+                null,
+                "Customer: " + customer.getName() + " (" + customer.getPhoneNumber() + ")",
+                "Rented on: " + rental.getRentalDate().format(formatter),
+                "Duration: " + rental.getDays() + " days",
+                "Price: " + currencyFormatter.format(rental.getTotalPrice())
+            };
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        // Fleet and rental history survive restarts through the snapshot and journal
+        RentalService service;
+        try {
+            service = RentalService.open(Paths.get(DATA_DIRECTORY));
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not open " + DATA_DIRECTORY, e);
+            JOptionPane.showMessageDialog(null, "Could not open " + DATA_DIRECTORY + ": " + e.getMessage());
+            return;
+        }
+
+        // Setup Cars with prices in INR on first start
+        if (service.getCars().isEmpty()) {
+            service.addCar("C001", "Toyota", "Camry", 5000.0);  // ₹5,000 per day
+            service.addCar("C002", "Honda", "Accord", 6000.0);  // ₹6,000 per day
+            service.addCar("C003", "Mahindra", "Thar", 12000.0); // ₹12,000 per day
+        }
+
+        service.setPricingRules(standardTariff());
+        exportMetrics(service.getMetrics());
+        EdtStallMonitor.install(service.getMetrics());
+        SwingUtilities.invokeLater(() -> new CarRentalSystem(service));
+    }
+
+    // Metrics are only observed, so failing to publish them must not stop the client
+    private static void exportMetrics(Metrics metrics) {
+        try {
+            metrics.registerMBean(METRICS_MBEAN);
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Metrics MBean not registered", e);
+        }
+        try {
+            new MetricsEndpoint(metrics, METRICS_PORT).start();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Metrics endpoint not started on port " + METRICS_PORT, e);
+        }
+    }
+
+    // Weekend and peak-season rates, long-rental discounts and surge when a model is nearly sold out
+    private static PricingRules standardTariff() {
+        PricingRules rules = new PricingRules();
+        rules.setWeekendMultiplier(1.2);
+        rules.setSeasonMultiplier(Month.MAY, 1.15);
+        rules.setSeasonMultiplier(Month.JUNE, 1.15);
+        rules.setSeasonMultiplier(Month.DECEMBER, 1.25);
+        rules.addLengthDiscount(7, 10);
+        rules.addLengthDiscount(30, 20);
+        rules.addSurgeTier(0.75, 1.1);
+        rules.addSurgeTier(0.9, 1.25);
+        return rules;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,18 @@
+class Customer {
+    private String customerId;
+    // The latest name given with the customer's phone number
+    private volatile String name;
+    private String phoneNumber;
+
+    public Customer(String customerId, String name, String phoneNumber) {
+        this.customerId = customerId;
+        this.name = name;
+        this.phoneNumber = phoneNumber;
+    }
+
+    public String getCustomerId() { return customerId; }
+    public String getName() { return name; }
+    public String getPhoneNumber() { return phoneNumber; }
+
+    public void setName(String name) { this.name = name; }
+}
@@ -0,0 +1,224 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Customers by ID and by phone number, so a returning customer resolves to
+// their existing record instead of getting a new one with every rental. Phone
+// numbers are compared by their digits only; a customer who gives no phone
+// number cannot be recognized and gets a new record each time. A known number
+// given with a different name renames its customer, as the journal records
+// the name with every booking and replay renames the same way. A booking the
+// journal then refuses undoes its registration: a customer it created is
+// dropped again and a name it replaced is put back.
+//
+// The phone index is an open-addressing table with linear probing, doubled
+// at half full. Lookups take no lock: the table is published through a
+// volatile field and each slot with release/acquire, so a reader sees either
+// nothing or a complete entry. Inserts are serialized on the registry, and a
+// miss is checked again under that lock before a customer is created. IDs
+// come from an AtomicInteger, so concurrent registrations never share one.
+// A dropped customer's slot is left as a tombstone, which probes step over,
+// until the table is next doubled.
+class CustomerRegistry {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Entry[].class);
+    private static final String ID_PREFIX = "CUS";
+    // No normalized phone number is empty, so lookups never match it
+    private static final Entry REMOVED = new Entry("", 0, null);
+
+    private final Map<String, Customer> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile Entry[] table = new Entry[64];
+    // Slots in use, tombstones included; guarded by this
+    private int entries;
+
+    private static final class Entry {
+        final String phone;
+        final int hash;
+        final Customer customer;
+
+        Entry(String phone, int hash, Customer customer) {
+            this.phone = phone;
+            this.hash = hash;
+            this.customer = customer;
+        }
+    }
+
+    // A customer handed out for a booking, with what handing it out changed
+    final class Registration {
+        private final Customer customer;
+        private final boolean created;
+        // The name this registration replaced, or null if it kept the name
+        private final String previousName;
+        private final String givenName;
+
+        private Registration(Customer customer, boolean created, String previousName, String givenName) {
+            this.customer = customer;
+            this.created = created;
+            this.previousName = previousName;
+            this.givenName = givenName;
+        }
+
+        public Customer getCustomer() { return customer; }
+
+        // For a booking that was refused after registering: drops a customer this registration
+        // created, or puts back the name it replaced unless the customer has been renamed since
+        public void undo() {
+            if (created) {
+                forget(customer);
+            } else if (previousName != null) {
+                synchronized (customer) {
+                    if (customer.getName().equals(givenName)) customer.setName(previousName);
+                }
+            }
+        }
+    }
+
+    // The customer with this phone number, registered as a new customer if there is none yet
+    // and renamed if the name given differs from the one on record
+    public Registration register(String name, String phoneNumber) {
+        String phone = normalize(phoneNumber);
+        String trimmedPhone = phoneNumber == null ? "" : phoneNumber.trim();
+        if (phone.isEmpty()) {
+            Customer customer = new Customer(nextId(), name.trim(), trimmedPhone);
+            byId.put(customer.getCustomerId(), customer);
+            return new Registration(customer, true, null, null);
+        }
+        Customer found = find(phone);
+        if (found != null) return renamed(found, name);
+        synchronized (this) {
+            found = find(phone);
+            if (found != null) return renamed(found, name);
+            Customer customer = new Customer(nextId(), name.trim(), trimmedPhone);
+            byId.put(customer.getCustomerId(), customer);
+            insert(phone, customer);
+            return new Registration(customer, true, null, null);
+        }
+    }
+
+    // Re-registers a customer from the journal or a snapshot under its recorded ID
+    public Customer restore(String customerId, String name, String phoneNumber) {
+        Customer existing = byId.get(customerId);
+        if (existing != null) return renamed(existing, name).customer;
+        Customer customer = new Customer(customerId, name, phoneNumber);
+        byId.put(customerId, customer);
+        if (customerId.startsWith(ID_PREFIX)) {
+            try {
+                sequence.accumulateAndGet(Integer.parseInt(customerId.substring(ID_PREFIX.length())), Math::max);
+            } catch (NumberFormatException e) {
+                // Not one of ours; the sequence only has to avoid clashing with generated IDs
+            }
+        }
+        String phone = normalize(phoneNumber);
+        if (!phone.isEmpty()) {
+            synchronized (this) {
+                // Older histories may hold several records for one number; the first one keeps it
+                if (find(phone) == null) insert(phone, customer);
+            }
+        }
+        return customer;
+    }
+
+    public Customer findById(String customerId) {
+        return customerId == null ? null : byId.get(customerId.trim());
+    }
+
+    public Customer findByPhone(String phoneNumber) {
+        String phone = normalize(phoneNumber);
+        return phone.isEmpty() ? null : find(phone);
+    }
+
+    public Collection<Customer> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private Registration renamed(Customer customer, String name) {
+        String trimmed = name.trim();
+        String previousName;
+        synchronized (customer) {
+            previousName = customer.getName();
+            if (trimmed.equals(previousName)) return new Registration(customer, false, null, null);
+            customer.setName(trimmed);
+        }
+        return new Registration(customer, false, previousName, trimmed);
+    }
+
+    private synchronized void forget(Customer customer) {
+        byId.remove(customer.getCustomerId(), customer);
+        String phone = normalize(customer.getPhoneNumber());
+        if (phone.isEmpty()) return;
+        Entry[] current = table;
+        int hash = spread(phone.hashCode());
+        int mask = current.length - 1;
+        for (int i = hash & mask; current[i] != null; i = (i + 1) & mask) {
+            if (current[i].customer == customer) {
+                SLOTS.setRelease(current, i, REMOVED);
+                return;
+            }
+        }
+    }
+
+    private String nextId() {
+        return ID_PREFIX + sequence.incrementAndGet();
+    }
+
+    private Customer find(String phone) {
+        int hash = spread(phone.hashCode());
+        Entry[] current = table;
+        int mask = current.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Entry entry = (Entry) SLOTS.getAcquire(current, i);
+            if (entry == null) return null;
+            if (entry.hash == hash && entry.phone.equals(phone)) return entry.customer;
+        }
+    }
+
+    // Called with the registry lock held, after find() missed
+    private void insert(String phone, Customer customer) {
+        Entry[] current = table;
+        if ((entries + 1) * 2 > current.length) {
+            Entry[] grown = new Entry[current.length * 2];
+            entries = 0;
+            for (Entry entry : current) {
+                if (entry != null && entry != REMOVED) {
+                    grown[slotFor(grown, entry.hash)] = entry;
+                    entries++;
+                }
+            }
+            table = grown;
+            current = grown;
+        }
+        int hash = spread(phone.hashCode());
+        SLOTS.setRelease(current, slotFor(current, hash), new Entry(phone, hash, customer));
+        entries++;
+    }
+
+    private static int slotFor(Entry[] slots, int hash) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] != null) i = (i + 1) & mask;
+        return i;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // The digits of the number, so "+91 98765-43210" and "919876543210" match
+    static String normalize(String phoneNumber) {
+        if (phoneNumber == null) return "";
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') digits.append(c);
+        }
+        return digits.toString();
+    }
+}
@@ -0,0 +1,262 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Hammers one RentalService from many threads and checks that no car is ever
+// booked twice. Run with java DoubleBookingCheck [threads] [operations per
+// thread]; it exits non-zero on the first broken invariant.
+//
+// Workers rent, return, group-rent, group-return, reserve, cancel and start
+// reservations on a small fleet so they collide constantly; half of them go
+// through a BookingPipeline while the rest call the service directly. A worker
+// only returns cars it rented itself, and marks each car it holds in a shared
+// array with compare-and-set: a second successful rental of a held car fails
+// that CAS on the spot. At the end every car's open bookings must be disjoint,
+// the held marks must match the open rentals, and the history must hold
+// exactly the rentals the workers were told succeeded.
+class DoubleBookingCheck {
+    private static final int CARS = 32;
+    private static final int GROUP_SIZE = 3;
+
+    private final RentalService service = new RentalService();
+    private final BookingPipeline pipeline;
+    private final AtomicIntegerArray held = new AtomicIntegerArray(CARS);
+    private final AtomicLong rentalsMade = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private DoubleBookingCheck() {
+        for (int i = 0; i < CARS; i++) service.addCar(carId(i), "Brand" + (i % 4), "Model" + (i % 3), 1000 + i);
+        pipeline = new BookingPipeline(service, "double-booking-check");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        DoubleBookingCheck check = new DoubleBookingCheck();
+        long started = System.nanoTime();
+        check.run(threads, operations);
+        check.verify();
+        System.out.printf("DoubleBookingCheck passed: %d threads x %d operations, %d rentals, %.1f s%n",
+            threads, operations, check.rentalsMade.get(), (System.nanoTime() - started) / 1e9);
+    }
+
+    private void run(int threads, int operations) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Worker worker = new Worker(t, operations, t % 2 == 1);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "double-booking-worker-" + t);
+            workers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : workers) thread.join();
+        pipeline.close();
+        if (failure.get() != null) throw new AssertionError("A worker failed.", failure.get());
+    }
+
+    private final class Worker {
+        private final int id;
+        private final int operations;
+        private final boolean viaPipeline;
+        private final Random random;
+        private final List<Integer> mine = new ArrayList<>();
+        private final List<String> reservations = new ArrayList<>();
+        private final String phone;
+
+        Worker(int id, int operations, boolean viaPipeline) {
+            this.id = id;
+            this.operations = operations;
+            this.viaPipeline = viaPipeline;
+            this.random = new Random(id);
+            this.phone = "98" + String.format("%08d", id);
+        }
+
+        void run() {
+            for (int i = 0; i < operations; i++) {
+                int choice = random.nextInt(100);
+                if (choice < 30) {
+                    rent(random.nextInt(CARS));
+                } else if (choice < 55) {
+                    returnOne();
+                } else if (choice < 62) {
+                    rentGroup();
+                } else if (choice < 67) {
+                    returnGroup();
+                } else if (choice < 85) {
+                    reserve();
+                } else if (choice < 93) {
+                    cancel();
+                } else {
+                    startReservation();
+                }
+            }
+            // Leave half of the cars out, so the final checks see open rentals too
+            while (mine.size() > 1) returnOne();
+        }
+
+        private void rent(int car) {
+            Rental rental;
+            try {
+                rental = viaPipeline
+                    ? pipeline.rentCar(carId(car), "Worker " + id, phone, 1 + random.nextInt(3)).join()
+                    : service.rentCar(carId(car), "Worker " + id, phone, 1 + random.nextInt(3));
+            } catch (IllegalStateException | CompletionException e) {
+                expectRefusal(e);
+                return;
+            }
+            hold(car, rental);
+        }
+
+        private void returnOne() {
+            if (mine.isEmpty()) return;
+            int car = mine.remove(random.nextInt(mine.size()));
+            release(car);
+            Rental rental = viaPipeline ? pipeline.returnCar(carId(car)).join() : service.returnCar(carId(car));
+            check(rental.isReturned(), "a returned rental is marked returned");
+        }
+
+        private void rentGroup() {
+            List<RentRequest> requests = new ArrayList<>();
+            List<Integer> cars = new ArrayList<>();
+            while (cars.size() < GROUP_SIZE) {
+                int car = random.nextInt(CARS);
+                if (cars.contains(car)) continue;
+                cars.add(car);
+                requests.add(new RentRequest(carId(car), "Worker " + id, phone, 1 + random.nextInt(3)));
+            }
+            List<Rental> group;
+            try {
+                group = service.rentGroup(requests);
+            } catch (IllegalStateException e) {
+                return;
+            }
+            check(group.size() == GROUP_SIZE, "a group rental books every car or none");
+            for (int i = 0; i < GROUP_SIZE; i++) hold(cars.get(i), group.get(i));
+        }
+
+        private void returnGroup() {
+            if (mine.size() < 2) return;
+            List<Integer> cars = new ArrayList<>(mine.subList(0, 2));
+            List<String> carIds = new ArrayList<>();
+            for (int car : cars) {
+                mine.remove(Integer.valueOf(car));
+                release(car);
+                carIds.add(carId(car));
+            }
+            check(service.returnGroup(carIds).size() == 2, "a group return closes every rental");
+        }
+
+        private void reserve() {
+            int car = random.nextInt(CARS);
+            LocalDate start = LocalDate.now().plusDays(random.nextInt(6));
+            LocalDate end = start.plusDays(1 + random.nextInt(4));
+            try {
+                Reservation reservation = viaPipeline
+                    ? pipeline.reserveCar(carId(car), "Worker " + id, phone, start, end).join()
+                    : service.reserveCar(carId(car), "Worker " + id, phone, start, end);
+                reservations.add(reservation.getReservationId());
+            } catch (IllegalStateException | CompletionException e) {
+                expectRefusal(e);
+            }
+        }
+
+        private void cancel() {
+            if (reservations.isEmpty()) return;
+            service.cancelReservation(reservations.remove(random.nextInt(reservations.size())));
+        }
+
+        private void startReservation() {
+            for (int i = 0; i < reservations.size(); i++) {
+                Reservation reservation = service.findReservation(reservations.get(i));
+                if (reservation == null || reservation.getStartDate().isAfter(LocalDate.now())) continue;
+                Rental rental;
+                try {
+                    rental = service.startReservation(reservations.get(i));
+                } catch (IllegalStateException e) {
+                    return;
+                }
+                reservations.remove(i);
+                hold(index(reservation.getCar()), rental);
+                return;
+            }
+        }
+
+        private void hold(int car, Rental rental) {
+            check(held.compareAndSet(car, 0, 1), "car " + carId(car) + " was booked while another rental held it");
+            check(rental.getCar() == service.findCar(carId(car)), "the rental is for the car asked for");
+            mine.add(car);
+            rentalsMade.incrementAndGet();
+        }
+
+        private void release(int car) {
+            check(held.compareAndSet(car, 1, 0), "car " + carId(car) + " was held by its renter");
+        }
+    }
+
+    // Refusals are expected under contention; anything else is a bug
+    private static void expectRefusal(RuntimeException e) {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        if (!(cause instanceof IllegalStateException)) throw new AssertionError("Unexpected failure.", cause);
+    }
+
+    private void verify() {
+        int open = 0;
+        Map<Car, List<long[]>> bookings = new HashMap<>();
+        for (int i = 0; i < CARS; i++) {
+            Car car = service.findCar(carId(i));
+            Rental rental = service.findActiveRental(carId(i));
+            check((rental != null) == (held.get(i) == 1), "car " + carId(i) + " is rented exactly when a worker holds it");
+            check(car.isAvailable() == (rental == null), "car " + carId(i) + " availability matches its rental");
+            if (rental == null) continue;
+            open++;
+            long startDay = rental.getRentalDate().toLocalDate().toEpochDay();
+            bookings.computeIfAbsent(car, key -> new ArrayList<>()).add(new long[] { startDay, startDay + rental.getDays() });
+        }
+        for (Reservation reservation : service.getReservations()) {
+            bookings.computeIfAbsent(reservation.getCar(), key -> new ArrayList<>()).add(
+                new long[] { reservation.getStartDate().toEpochDay(), reservation.getEndDate().toEpochDay() });
+        }
+        for (Map.Entry<Car, List<long[]>> entry : bookings.entrySet()) checkDisjoint(entry.getKey(), entry.getValue());
+        check(service.getStatistics().getActiveRentals() == open, "the statistics count every open rental");
+        check(service.getRentals().size() == rentalsMade.get(), "the history holds exactly the successful rentals: "
+            + service.getRentals().size() + " against " + rentalsMade.get());
+    }
+
+    private static void checkDisjoint(Car car, Collection<long[]> ranges) {
+        List<long[]> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(range -> range[0]));
+        for (int i = 1; i < sorted.size(); i++) {
+            check(sorted.get(i)[0] >= sorted.get(i - 1)[1], "car " + car.getCarId() + " has overlapping bookings");
+        }
+    }
+
+    private static String carId(int index) {
+        return "C" + index;
+    }
+
+    private static int index(Car car) {
+        return Integer.parseInt(car.getCarId().substring(1));
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError("Failed: " + what);
+    }
+}
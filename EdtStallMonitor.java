@@ -0,0 +1,111 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.logging.Logger;
+
+// Times every event the Swing event dispatch thread handles, paints included,
+// into the edt_dispatch operation, and counts those slower than the stall
+// threshold in edt_stalls. A watchdog thread also looks at the EDT while an
+// event is still being handled: once one has run past the threshold it logs
+// the EDT's stack, once per stall, so a frozen window shows where it is stuck
+// rather than only how long it froze.
+//
+// An event can dispatch others inside it, as a modal dialog's event loop does.
+// The inner event is watched on its own and the outer one resumes when it ends;
+// time the EDT spends waiting for the next event is not counted against either.
+class EdtStallMonitor extends EventQueue {
+    private static final long DEFAULT_THRESHOLD_MILLIS = 100;
+    private static final Logger LOG = Logger.getLogger(EdtStallMonitor.class.getName());
+
+    private final Metrics.Operation dispatch;
+    private final Metrics.Counter stalls;
+    private final long thresholdNanos;
+    private volatile Thread dispatchThread;
+    // System.nanoTime() when the current event started, less any time spent waiting
+    // inside it, or 0 while no event is being handled
+    private volatile long dispatchStarted;
+    private long reportedStart;
+    // Events dispatched so far; only touched on the EDT
+    private long dispatches;
+
+    private EdtStallMonitor(Metrics metrics, long thresholdMillis) {
+        this.dispatch = metrics.operation("edt_dispatch");
+        this.stalls = metrics.counter("edt_stalls", "Swing events that kept the UI busy past the stall threshold.");
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    // Call once, before the first window is shown
+    public static void install(Metrics metrics) {
+        install(metrics, DEFAULT_THRESHOLD_MILLIS);
+    }
+
+    public static void install(Metrics metrics, long thresholdMillis) {
+        if (thresholdMillis <= 0) {
+            throw new IllegalArgumentException("The stall threshold must be positive.");
+        }
+        EdtStallMonitor monitor = new EdtStallMonitor(metrics, thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor);
+        Thread watchdog = new Thread(monitor::watch, "edt-stall-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long dispatchesBefore = ++dispatches;
+        long started = System.nanoTime();
+        long outerStarted = dispatchStarted;
+        dispatchThread = Thread.currentThread();
+        dispatchStarted = started;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            dispatchStarted = outerStarted;
+            // An event that opened a modal dialog ran its own event loop and waited for the
+            // user; the events handled inside that loop were timed one by one instead
+            if (dispatches == dispatchesBefore) {
+                dispatch.record(started);
+                if (System.nanoTime() - started > thresholdNanos) stalls.increment();
+            }
+        }
+    }
+
+    // Waiting here for the next event, even inside a modal loop, is not a stall: the
+    // enclosing event's clock stops until the wait is over
+    @Override
+    public AWTEvent getNextEvent() throws InterruptedException {
+        long outerStarted = dispatchStarted;
+        if (outerStarted == 0) return super.getNextEvent();
+        long waitStarted = System.nanoTime();
+        dispatchStarted = 0;
+        try {
+            return super.getNextEvent();
+        } finally {
+            dispatchStarted = outerStarted + (System.nanoTime() - waitStarted);
+        }
+    }
+
+    private void watch() {
+        long pollMillis = Math.max(10, thresholdNanos / 2_000_000);
+        while (true) {
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long started = dispatchStarted;
+            if (started == 0 || started == reportedStart) continue;
+            long elapsed = System.nanoTime() - started;
+            if (elapsed <= thresholdNanos) continue;
+            Thread thread = dispatchThread;
+            if (thread == null) continue;
+            reportedStart = started;
+            StackTraceElement[] stack = thread.getStackTrace();
+            StringBuilder report = new StringBuilder("UI stalled for ").append(elapsed / 1_000_000).append(" ms in:");
+            for (StackTraceElement frame : stack) {
+                report.append("\n\tat ").append(frame);
+            }
+            LOG.warning(report.toString());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Bitmap indexes over the fleet for combined car queries. Each car has a fixed
+// position (its ordinal, in the order cars were added); brand and model map to
+// a bitmap of ordinals, availability is one bitmap, and base prices are kept
+// as ordinals sorted by price so a price range is a binary search. A query
+// ANDs the bitmaps of its predicates and reads the matching cars off the
+// result, never looking at cars that fail a predicate.
+//
+// Cars are added under the write lock. Availability flips on every rent and
+// return, so those bits are updated with compare-and-set under the read lock
+// instead, and are re-checked against the car when a query filters on them.
+class FleetIndex {
+    private final List<Car> cars = new ArrayList<>();
+    private final Map<Car, Integer> ordinals = new HashMap<>();
+    private final Map<String, BitSet> byBrand = new HashMap<>();
+    private final Map<String, BitSet> byModel = new HashMap<>();
+    private AtomicLongArray available = new AtomicLongArray(1);
+    private double[] prices = new double[16];
+    // Ordinals by ascending price, rebuilt on the first price query after cars are added
+    private int[] byPrice = new int[0];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void carAdded(Car car) {
+        carsAdded(List.of(car));
+    }
+
+    // Adds the cars under one write lock, so a bulk import does not take it per car
+    public void carsAdded(List<Car> added) {
+        lock.writeLock().lock();
+        try {
+            for (Car car : added) add(car);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Copies the car's current availability into the index; call after each change to it
+    public void availabilityChanged(Car car) {
+        lock.readLock().lock();
+        try {
+            int ordinal = ordinals.get(car);
+            boolean value;
+            // A rent and a return racing on the same car may publish out of order; the last one re-reads
+            do {
+                value = car.isAvailable();
+                setAvailable(ordinal, value);
+            } while (car.isAvailable() != value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Matching cars in the order they were added
+    public List<Car> find(CarQuery query) {
+        BitSet matches;
+        lock.readLock().lock();
+        try {
+            matches = new BitSet(cars.size());
+            matches.set(0, cars.size());
+            if (query.getBrand() != null) and(matches, byBrand.get(key(query.getBrand())));
+            if (query.getModel() != null) and(matches, byModel.get(key(query.getModel())));
+            if (query.getMinPricePerDay() != null || query.getMaxPricePerDay() != null) {
+                matches.and(priceRange(query.getMinPricePerDay(), query.getMaxPricePerDay()));
+            }
+            if (query.getAvailable() != null) {
+                BitSet availableCars = availableBits();
+                if (!query.getAvailable()) availableCars.flip(0, cars.size());
+                matches.and(availableCars);
+            }
+            List<Car> found = new ArrayList<>(matches.cardinality());
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                Car car = cars.get(ordinal);
+                if (query.getAvailable() == null || car.isAvailable() == query.getAvailable()) found.add(car);
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Called with the write lock held
+    private void add(Car car) {
+        int ordinal = cars.size();
+        cars.add(car);
+        ordinals.put(car, ordinal);
+        byBrand.computeIfAbsent(key(car.getBrand()), key -> new BitSet()).set(ordinal);
+        byModel.computeIfAbsent(key(car.getModel()), key -> new BitSet()).set(ordinal);
+        if (ordinal / 64 >= available.length()) {
+            AtomicLongArray grown = new AtomicLongArray(available.length() * 2);
+            for (int i = 0; i < available.length(); i++) grown.set(i, available.get(i));
+            available = grown;
+        }
+        if (ordinal == prices.length) prices = Arrays.copyOf(prices, ordinal * 2);
+        prices[ordinal] = car.getBasePricePerDay();
+        setAvailable(ordinal, car.isAvailable());
+    }
+
+    private void setAvailable(int ordinal, boolean value) {
+        int word = ordinal / 64;
+        long bit = 1L << ordinal;
+        long current;
+        do {
+            current = available.get(word);
+        } while (!available.compareAndSet(word, current, value ? current | bit : current & ~bit));
+    }
+
+    private BitSet availableBits() {
+        long[] words = new long[(cars.size() + 63) / 64];
+        for (int i = 0; i < words.length; i++) words[i] = available.get(i);
+        return BitSet.valueOf(words);
+    }
+
+    // Called with the read lock held; takes the write lock briefly if the price order is stale
+    private BitSet priceRange(Double min, Double max) {
+        int[] order = byPrice;
+        if (order.length != cars.size()) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                order = sortByPrice();
+            } finally {
+                lock.readLock().lock();
+                lock.writeLock().unlock();
+            }
+        }
+        int from = min == null ? 0 : firstAtLeast(order, min);
+        int to = max == null ? order.length : firstAbove(order, max);
+        BitSet inRange = new BitSet(cars.size());
+        for (int i = from; i < to; i++) inRange.set(order[i]);
+        return inRange;
+    }
+
+    // Called with the write lock held
+    private int[] sortByPrice() {
+        if (byPrice.length == cars.size()) return byPrice;
+        int count = cars.size();
+        // Replace each price by its rank among the distinct prices, then sort (rank, ordinal) packed into longs
+        long[] keyed = new long[count];
+        double[] sortedPrices = Arrays.copyOf(prices, count);
+        Arrays.sort(sortedPrices);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || sortedPrices[distinct - 1] != sortedPrices[i]) sortedPrices[distinct++] = sortedPrices[i];
+        }
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            int rank = Arrays.binarySearch(sortedPrices, 0, distinct, prices[ordinal]);
+            keyed[ordinal] = ((long) rank << 32) | ordinal;
+        }
+        Arrays.sort(keyed);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = (int) keyed[i];
+        byPrice = order;
+        return order;
+    }
+
+    private int firstAtLeast(int[] order, double price) {
+        int low = 0, high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[order[mid]] < price) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    private int firstAbove(int[] order, double price) {
+        int low = 0, high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[order[mid]] <= price) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    private static void and(BitSet matches, BitSet predicate) {
+        if (predicate == null) matches.clear(); else matches.and(predicate);
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
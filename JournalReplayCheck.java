@@ -0,0 +1,272 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Kills a JVM in the middle of journaled bookings and checks that reopening
+// the data directory brings back every booking that was acknowledged. Run
+// with java JournalReplayCheck [rounds]; it exits non-zero on the first
+// mismatch.
+//
+// Each round starts a child JVM on the same directory. The child books at
+// random (rent, return, group rent and return, reserve, cancel, with an
+// occasional checkpoint), printing each operation before it starts and again
+// once the call returned, which is once the record is durable, and halts
+// itself at a random moment without closing anything. The parent replays the
+// acknowledged operations into a model, reopens the directory and compares:
+// every acknowledged booking must be there, and at most the one operation in
+// flight at the crash may have landed on top. Finally a torn record is
+// appended to the journal, which must be cut off on the next open.
+class JournalReplayCheck {
+    private static final int CARS = 16;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            child(Paths.get(args[1]), Long.parseLong(args[2]));
+            return;
+        }
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        Path directory = Files.createTempDirectory("journal-replay-check");
+        try {
+            State expected = new State();
+            long operations = 0;
+            for (int round = 0; round < rounds; round++) {
+                List<String> output = runChild(directory, round);
+                operations += expected.apply(output);
+                State actual = State.read(directory);
+                expected.reconcile(actual, output);
+            }
+            tearJournal(directory);
+            State afterTear = State.read(directory);
+            check(afterTear.equals(expected), "a torn journal tail is cut off on open");
+            System.out.printf("JournalReplayCheck passed: %d crashes, %d acknowledged operations%n", rounds, operations);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    private static List<String> runChild(Path directory, int round) throws IOException, InterruptedException {
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        Process process = new ProcessBuilder(java.toString(), "-cp", System.getProperty("java.class.path"),
+            JournalReplayCheck.class.getName(), "child", directory.toString(), Long.toString(round))
+            .redirectErrorStream(false)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) lines.add(line);
+        }
+        process.waitFor();
+        return lines;
+    }
+
+    // Books until the halter thread kills the JVM
+    private static void child(Path directory, long seed) throws IOException {
+        PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        Random random = new Random(seed);
+        RentalService service = RentalService.open(directory);
+        if (service.getCars().isEmpty()) {
+            for (int i = 0; i < CARS; i++) service.addCar("C" + i, "Brand", "Model" + (i % 4), 1000 + i);
+        }
+        Thread halter = new Thread(() -> {
+            try {
+                Thread.sleep(300 + random.nextInt(1200));
+            } catch (InterruptedException e) {
+                return;
+            }
+            Runtime.getRuntime().halt(1);
+        }, "halter");
+        halter.setDaemon(true);
+        halter.start();
+        while (true) {
+            int choice = random.nextInt(100);
+            String car = "C" + random.nextInt(CARS);
+            String other = "C" + random.nextInt(CARS);
+            try {
+                if (choice < 35) {
+                    out.println("BEGIN RENT " + car);
+                    service.rentCar(car, "Customer", "9800000000", 1 + random.nextInt(3));
+                    out.println("ACK RENT " + car);
+                } else if (choice < 65) {
+                    out.println("BEGIN RETURN " + car);
+                    service.returnCar(car);
+                    out.println("ACK RETURN " + car);
+                } else if (choice < 72) {
+                    if (car.equals(other)) continue;
+                    out.println("BEGIN GROUP_RENT " + car + " " + other);
+                    service.rentGroup(List.of(new RentRequest(car, "Customer", "9800000000", 2),
+                        new RentRequest(other, "Customer", "9800000000", 2)));
+                    out.println("ACK GROUP_RENT " + car + " " + other);
+                } else if (choice < 79) {
+                    if (car.equals(other)) continue;
+                    out.println("BEGIN GROUP_RETURN " + car + " " + other);
+                    service.returnGroup(List.of(car, other));
+                    out.println("ACK GROUP_RETURN " + car + " " + other);
+                } else if (choice < 92) {
+                    LocalDate start = LocalDate.now().plusDays(5 + random.nextInt(30));
+                    out.println("BEGIN RESERVE " + car);
+                    Reservation reservation = service.reserveCar(car, "Customer", "9800000000", start, start.plusDays(2));
+                    out.println("ACK RESERVE " + reservation.getReservationId());
+                } else if (choice < 98) {
+                    List<Reservation> open = service.getReservations();
+                    if (open.isEmpty()) continue;
+                    String id = open.get(random.nextInt(open.size())).getReservationId();
+                    out.println("BEGIN CANCEL " + id);
+                    service.cancelReservation(id);
+                    out.println("ACK CANCEL " + id);
+                } else {
+                    service.checkpoint();
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                out.println("REFUSED");
+            }
+        }
+    }
+
+    // What the parent believes is on disk
+    private static final class State {
+        final Set<String> rented = new HashSet<>();
+        final Set<String> reservations = new HashSet<>();
+        long rentals;
+
+        static State read(Path directory) throws IOException {
+            RentalService service = RentalService.open(directory);
+            try {
+                State state = new State();
+                for (Car car : service.getCars()) {
+                    if (service.findActiveRental(car.getCarId()) != null) state.rented.add(car.getCarId());
+                }
+                for (Reservation reservation : service.getReservations()) state.reservations.add(reservation.getReservationId());
+                state.rentals = service.getRentals().size();
+                return state;
+            } finally {
+                service.close();
+            }
+        }
+
+        // Applies the acknowledged operations; returns how many there were
+        long apply(List<String> output) {
+            long acknowledged = 0;
+            for (String line : output) {
+                if (!line.startsWith("ACK ")) continue;
+                acknowledged++;
+                apply(line.substring(4).split(" "));
+            }
+            return acknowledged;
+        }
+
+        private void apply(String[] operation) {
+            switch (operation[0]) {
+                case "RENT":
+                    rented.add(operation[1]);
+                    rentals++;
+                    break;
+                case "RETURN":
+                    rented.remove(operation[1]);
+                    break;
+                case "GROUP_RENT":
+                    rented.addAll(Arrays.asList(operation[1], operation[2]));
+                    rentals += 2;
+                    break;
+                case "GROUP_RETURN":
+                    rented.removeAll(Arrays.asList(operation[1], operation[2]));
+                    break;
+                case "RESERVE":
+                    reservations.add(operation[1]);
+                    break;
+                case "CANCEL":
+                    reservations.remove(operation[1]);
+                    break;
+                default:
+                    throw new AssertionError("Unknown operation " + operation[0]);
+            }
+        }
+
+        // Checks the reopened state against the model, allowing the operation in flight at
+        // the crash to have landed, then adopts the reopened state for the next round
+        void reconcile(State actual, List<String> output) {
+            String inFlight = null;
+            for (String line : output) {
+                if (line.startsWith("BEGIN ")) inFlight = line.substring(6);
+                else inFlight = null;
+            }
+            if (!actual.equals(this)) {
+                check(inFlight != null, "every acknowledged operation survived the crash: expected " + this + ", found " + actual);
+                State landed = copy();
+                String[] operation = inFlight.split(" ");
+                if (operation[0].equals("RESERVE")) {
+                    Set<String> added = new HashSet<>(actual.reservations);
+                    added.removeAll(reservations);
+                    check(added.size() == 1, "only the reservation in flight may have landed");
+                    operation[1] = added.iterator().next();
+                }
+                landed.apply(operation);
+                check(actual.equals(landed), "the crash left acknowledged state plus at most the operation in flight ("
+                    + inFlight + "): expected " + this + ", found " + actual);
+            }
+            rented.clear();
+            rented.addAll(actual.rented);
+            reservations.clear();
+            reservations.addAll(actual.reservations);
+            rentals = actual.rentals;
+        }
+
+        private State copy() {
+            State copy = new State();
+            copy.rented.addAll(rented);
+            copy.reservations.addAll(reservations);
+            copy.rentals = rentals;
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof State)) return false;
+            State state = (State) other;
+            return rented.equals(state.rented) && reservations.equals(state.reservations) && rentals == state.rentals;
+        }
+
+        @Override
+        public int hashCode() {
+            return rented.hashCode() * 31 + reservations.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("rented", rented.size());
+            fields.put("reservations", reservations.size());
+            fields.put("rentals", rentals);
+            return fields.toString();
+        }
+    }
+
+    // Appends the first half of a valid-looking record, as a crash mid-write would leave it
+    private static void tearJournal(Path directory) throws IOException {
+        List<Long> segments = RentalJournal.segments(directory);
+        Path last = RentalJournal.segmentPath(directory, segments.get(segments.size() - 1));
+        byte[] torn = { 0, 0, 0, 40, 1, 2, 3, 4, 2, 0, 5, 'C' };
+        Files.write(last, torn, StandardOpenOption.APPEND);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError("Failed: " + what);
+    }
+}
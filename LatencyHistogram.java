@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency distribution in nanoseconds with log-linear buckets, in the manner
+// of HdrHistogram: values below 64 get a bucket each, and every power of two
+// above that is split into 32 equal buckets, so a quantile read back is
+// within about 3% of the recorded value. Values past MAX_NANOS (about 18
+// minutes) land in the last bucket.
+//
+// Recording takes no lock: it is one atomic increment of the value's bucket
+// plus striped adds for the count and sum. Snapshots copy the buckets without
+// stopping writers, so a snapshot taken under load may be a few values behind.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final long MAX_NANOS = (1L << 40) - 1;
+    private static final int BUCKETS = indexOf(MAX_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_NANOS);
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    // Records the time since a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    private static int indexOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (int) ((long) shift * SUB_BUCKETS + (value >>> shift));
+    }
+
+    // Largest value that falls in the bucket
+    private static long highestIn(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long top = index - (long) shift * SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() { return count; }
+        public long getSumNanos() { return sum; }
+        public long getMaxNanos() { return max; }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // Smallest recorded value at or above the given share of values (0 to 1), capped at the maximum
+        public long valueAt(double quantile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestIn(i), max);
+            }
+            return max;
+        }
+    }
+}
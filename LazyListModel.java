@@ -0,0 +1,37 @@
+import javax.swing.AbstractListModel;
+import java.util.Collections;
+import java.util.List;
+
+// ListModel over a list view that is replaced wholesale on refresh. Rows are
+// fetched from the view only when JList asks for them, which with a fixed cell
+// size means only the rows being painted. A refresh fires at most two events
+// (the changed span plus the added or removed tail) instead of one per row.
+@SuppressWarnings("serial")
+class LazyListModel<E> extends AbstractListModel<E> {
+    private List<E> rows = Collections.emptyList();
+
+    public void setRows(List<E> newRows) {
+        int oldSize = rows.size();
+        int newSize = newRows.size();
+        rows = newRows;
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        int common = Math.min(oldSize, newSize);
+        if (common > 0) {
+            fireContentsChanged(this, 0, common - 1);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public E getElementAt(int index) {
+        return rows.get(index);
+    }
+}
@@ -0,0 +1,128 @@
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// A bounded cache of computed values: the least recently used entry goes once a
+// segment is full, and any entry older than its time to live is recomputed.
+//
+// Keys are spread over lock-striped segments, each a LinkedHashMap in access
+// order, so readers of different keys rarely meet on a lock and a hit is one
+// hash probe plus relinking one node. Each entry is stamped with the owner's
+// version at the time it was computed. The owner bumps the version after every
+// change the values depend on, and an entry stamped with an older version is a
+// miss, so one increment invalidates the whole cache without the writer having
+// to know which keys it touched.
+//
+// Values are computed outside the segment lock: two readers missing the same
+// key at once may both compute it, and the later one is kept.
+class LruCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final LongSupplier version;
+    private final Metrics.Counter hits;
+    private final Metrics.Counter misses;
+    private final Metrics.Counter evictions;
+
+    private static final class Entry<V> {
+        final V value;
+        final long version;
+        final long expiresAt;
+
+        Entry(V value, long version, long expiresAt) {
+            this.value = value;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int capacity;
+        private final Metrics.Counter evictions;
+
+        Segment(int capacity, Metrics.Counter evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+
+    // Registers <name>_hits, <name>_misses and <name>_evictions counters and
+    // <name>_size and <name>_hit_ratio gauges. The version must only ever grow.
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public LruCache(String name, int capacity, Duration ttl, LongSupplier version, Metrics metrics) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The cache capacity must be positive.");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("The time to live must be positive.");
+        }
+        int count = Integer.highestOneBit(Math.min(MAX_SEGMENTS, capacity));
+        this.segments = new Segment[count];
+        this.ttlNanos = ttl.toNanos();
+        this.version = version;
+        this.hits = metrics.counter(name + "_hits", "Lookups answered from the " + name + ".");
+        this.misses = metrics.counter(name + "_misses", "Lookups the " + name + " had to compute: absent, expired or invalidated.");
+        this.evictions = metrics.counter(name + "_evictions", "Entries pushed out of the full " + name + ".");
+        for (int i = 0; i < count; i++) segments[i] = new Segment<>((capacity + count - 1) / count, evictions);
+        metrics.gauge(name + "_size", "Entries held by the " + name + ", expired ones included.", this::size);
+        metrics.gauge(name + "_hit_ratio", "Share of lookups answered from the " + name + " since start.", this::hitRatio);
+    }
+
+    // The cached value, or the loader's result for the key, which is then cached unless null
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        // Read before computing, so a change made while the loader runs leaves the new entry stale
+        long current = version.getAsLong();
+        long now = System.nanoTime();
+        Segment<K, V> segment = segmentFor(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null && entry.version == current && now - entry.expiresAt < 0) {
+            hits.increment();
+            return entry.value;
+        }
+        misses.increment();
+        V value = loader.apply(key);
+        if (value != null) {
+            synchronized (segment) {
+                segment.put(key, new Entry<>(value, current, now + ttlNanos));
+            }
+        }
+        return value;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public double hitRatio() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+}
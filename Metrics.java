@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+// Operation latencies, counters and gauges for one RentalService. Operations
+// and counters are recorded without locks on the calling thread; gauges are
+// read only when the metrics are exported. Metrics are registered once by
+// name and looked up again by the same name.
+//
+// The same figures can be exported in the Prometheus text format (see
+// MetricsEndpoint) and through JMX once registerMBean is called. Names are
+// snake_case and exported with the car_rental_ prefix.
+class Metrics {
+    private static final String PREFIX = "car_rental_";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    // Latency of every call, successful or not, plus the number of calls that failed
+    static class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        public void record(long startNanos) {
+            latency.recordSince(startNanos);
+        }
+
+        public void failed() {
+            failures.increment();
+        }
+
+        public LatencyHistogram.Snapshot snapshot() {
+            return latency.snapshot();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+    }
+
+    static class Counter {
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String help) {
+            this.help = help;
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    private static class Gauge {
+        final String help;
+        final DoubleSupplier value;
+
+        Gauge(String help, DoubleSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    public Operation operation(String name) {
+        return operations.computeIfAbsent(requireName(name), key -> new Operation());
+    }
+
+    public Counter counter(String name, String help) {
+        return counters.computeIfAbsent(requireName(name), key -> new Counter(help));
+    }
+
+    // The supplier is called from the exporting thread, so it must be safe to read from any thread
+    public void gauge(String name, String help, DoubleSupplier value) {
+        if (gauges.putIfAbsent(requireName(name), new Gauge(help, value)) != null) {
+            throw new IllegalStateException("A gauge named " + name + " already exists.");
+        }
+    }
+
+    private static String requireName(String name) {
+        if (name == null || !name.matches("[a-z][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Metric names must be snake_case: " + name);
+        }
+        return name;
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    public void writePrometheus(Appendable out) throws IOException {
+        if (!operations.isEmpty()) {
+            String latency = PREFIX + "operation_seconds";
+            header(out, latency, "Latency of each operation since start.", "summary");
+            for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+                LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+                String operation = "operation=\"" + entry.getKey() + "\"";
+                for (double quantile : QUANTILES) {
+                    sample(out, latency, operation + ",quantile=\"" + quantile + "\"", snapshot.valueAt(quantile) / NANOS_PER_SECOND);
+                }
+                sample(out, latency + "_sum", operation, snapshot.getSumNanos() / NANOS_PER_SECOND);
+                sample(out, latency + "_count", operation, snapshot.getCount());
+            }
+            String max = PREFIX + "operation_max_seconds";
+            header(out, max, "Slowest call of each operation since start.", "gauge");
+            for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+                sample(out, max, "operation=\"" + entry.getKey() + "\"", entry.getValue().snapshot().getMaxNanos() / NANOS_PER_SECOND);
+            }
+            String failures = PREFIX + "operation_failures_total";
+            header(out, failures, "Calls of each operation that threw.", "counter");
+            for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+                sample(out, failures, "operation=\"" + entry.getKey() + "\"", entry.getValue().getFailures());
+            }
+        }
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            String name = PREFIX + entry.getKey() + "_total";
+            header(out, name, entry.getValue().help, "counter");
+            sample(out, name, null, entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            String name = PREFIX + entry.getKey();
+            header(out, name, entry.getValue().help, "gauge");
+            sample(out, name, null, entry.getValue().value.getAsDouble());
+        }
+    }
+
+    private static void header(Appendable out, String name, String help, String type) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String labels, double value) throws IOException {
+        out.append(name);
+        if (labels != null) out.append('{').append(labels).append('}');
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    // Exposes every metric as a read-only JMX attribute; operations appear as
+    // <name>Count, <name>Failures and <name>P50Micros through <name>MaxMicros
+    public ObjectName registerMBean(String objectName) throws JMException {
+        ObjectName name = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxView(), name);
+        return name;
+    }
+
+    private class JmxView implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+                String prefix = camelCase(entry.getKey());
+                if (!attribute.startsWith(prefix)) continue;
+                String field = attribute.substring(prefix.length());
+                Operation operation = entry.getValue();
+                switch (field) {
+                    case "Count": return operation.snapshot().getCount();
+                    case "Failures": return operation.getFailures();
+                    case "MeanMicros": return operation.snapshot().getMeanNanos() / 1000;
+                    case "P50Micros": return operation.snapshot().valueAt(0.5) / 1000.0;
+                    case "P99Micros": return operation.snapshot().valueAt(0.99) / 1000.0;
+                    case "P999Micros": return operation.snapshot().valueAt(0.999) / 1000.0;
+                    case "MaxMicros": return operation.snapshot().getMaxNanos() / 1000.0;
+                    default: break;
+                }
+            }
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                if (attribute.equals(camelCase(entry.getKey()))) return entry.getValue().get();
+            }
+            for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+                if (attribute.equals(camelCase(entry.getKey()))) return entry.getValue().value.getAsDouble();
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the DynamicMBean contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Metrics have no operations.");
+        }
+
+        // Rebuilt on every call, so metrics registered after the MBean still show up
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : operations.keySet()) {
+                String prefix = camelCase(name);
+                attributes.add(attribute(prefix + "Count", "long", "Calls of " + name));
+                attributes.add(attribute(prefix + "Failures", "long", "Calls of " + name + " that threw"));
+                for (String field : new String[] { "MeanMicros", "P50Micros", "P99Micros", "P999Micros", "MaxMicros" }) {
+                    attributes.add(attribute(prefix + field, "double", "Latency of " + name));
+                }
+            }
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                attributes.add(attribute(camelCase(entry.getKey()), "long", entry.getValue().help));
+            }
+            for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+                attributes.add(attribute(camelCase(entry.getKey()), "double", entry.getValue().help));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Car rental metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        private MBeanAttributeInfo attribute(String name, String type, String description) {
+            return new MBeanAttributeInfo(name, type, description, true, false, false);
+        }
+    }
+
+    // rent_car becomes RentCar
+    private static String camelCase(String name) {
+        StringBuilder result = new StringBuilder(name.length());
+        boolean upper = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '_') {
+                upper = true;
+            } else {
+                result.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return result.toString();
+    }
+}
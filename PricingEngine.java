@@ -0,0 +1,184 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Quotes rental prices from PricingRules compiled into lookup tables.
+//
+// The weekend and season multipliers of every day in a window around today are
+// folded into a prefix-sum table, so the multiplier total of any date range is
+// one subtraction, and length discounts become a table indexed by days. A
+// quote is then base price x range total x length multiplier x surge: constant
+// time whatever the rules or rental length. Quoting a fleet computes the range
+// part once and scales a flat array of base prices by it.
+//
+// Surge is tracked per brand and model from the number of those cars rented,
+// kept up to date by RentalService as cars are added, rented and returned. A
+// fleet quote reads each brand and model's surge once, before pricing any car.
+class PricingEngine {
+    private static final int PAST_DAYS = 31;
+    private static final int HORIZON_DAYS = 3 * 366;
+    private static final int LENGTH_TABLE_DAYS = 366;
+
+    private volatile Tariff tariff = new Tariff(new PricingRules(), today() - PAST_DAYS);
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    private final Map<Car, Group> groupByCar = new ConcurrentHashMap<>();
+    private final AtomicInteger groupCount = new AtomicInteger();
+
+    private static final class Group {
+        // Position in a fleet quote's surge snapshot
+        final int index;
+        int cars;
+        int rented;
+        volatile double surge = 1.0;
+
+        Group(int index) {
+            this.index = index;
+        }
+    }
+
+    private static final class Tariff {
+        final PricingRules rules;
+        final long firstDay;
+        // dayTotals[i] is the sum of the day multipliers of the i days from firstDay
+        final double[] dayTotals = new double[HORIZON_DAYS + 1];
+        final double[] lengthMultipliers;
+
+        Tariff(PricingRules rules, long firstDay) {
+            this.rules = rules;
+            this.firstDay = firstDay;
+            for (int i = 0; i < HORIZON_DAYS; i++) {
+                dayTotals[i + 1] = dayTotals[i] + rules.dayMultiplier(LocalDate.ofEpochDay(firstDay + i));
+            }
+            lengthMultipliers = new double[Math.max(LENGTH_TABLE_DAYS, rules.longestDiscountThreshold()) + 1];
+            for (int days = 1; days < lengthMultipliers.length; days++) {
+                lengthMultipliers[days] = rules.lengthMultiplier(days);
+            }
+        }
+
+        boolean covers(long startDay, int days) {
+            long offset = startDay - firstDay;
+            return offset >= 0 && offset + days <= HORIZON_DAYS;
+        }
+
+        // Everything in a quote except the base price and surge
+        double rangeMultiplier(long startDay, int days) {
+            double dayTotal;
+            if (covers(startDay, days)) {
+                int offset = (int) (startDay - firstDay);
+                dayTotal = dayTotals[offset + days] - dayTotals[offset];
+            } else {
+                dayTotal = 0;
+                for (int i = 0; i < days; i++) dayTotal += rules.dayMultiplier(LocalDate.ofEpochDay(startDay + i));
+            }
+            return dayTotal * lengthMultipliers[Math.min(days, lengthMultipliers.length - 1)];
+        }
+    }
+
+    public synchronized void setRules(PricingRules rules) {
+        tariff = new Tariff(rules.copy(), today() - PAST_DAYS);
+        for (Group group : groups.values()) {
+            synchronized (group) {
+                updateSurge(group);
+            }
+        }
+    }
+
+    public double quote(Car car, LocalDate start, int days) {
+        double multiplier = tariffFor(start.toEpochDay(), days).rangeMultiplier(start.toEpochDay(), days);
+        return roundToPaise(car.getBasePricePerDay() * surge(car) * multiplier);
+    }
+
+    // Prices for every car over the same dates, in the order given
+    public double[] quote(List<Car> cars, LocalDate start, int days) {
+        double multiplier = tariffFor(start.toEpochDay(), days).rangeMultiplier(start.toEpochDay(), days);
+        // Every car of a brand and model is priced at the same surge, even if a rental moves it mid-quote
+        double[] surges = surges();
+        double[] prices = new double[cars.size()];
+        for (int i = 0; i < prices.length; i++) {
+            Car car = cars.get(i);
+            Group group = groupByCar.get(car);
+            prices[i] = car.getBasePricePerDay() * (group == null ? 1.0 : surge(group, surges));
+        }
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = roundToPaise(prices[i] * multiplier);
+        }
+        return prices;
+    }
+
+    public void carAdded(Car car) {
+        Group group = groups.computeIfAbsent(car.getBrand() + "/" + car.getModel(),
+            key -> new Group(groupCount.getAndIncrement()));
+        groupByCar.put(car, group);
+        synchronized (group) {
+            group.cars++;
+            updateSurge(group);
+        }
+    }
+
+    public void carRented(Car car) {
+        Group group = groupByCar.get(car);
+        synchronized (group) {
+            group.rented++;
+            updateSurge(group);
+        }
+    }
+
+    public void carReturned(Car car) {
+        Group group = groupByCar.get(car);
+        synchronized (group) {
+            group.rented--;
+            updateSurge(group);
+        }
+    }
+
+    private double surge(Car car) {
+        Group group = groupByCar.get(car);
+        return group == null ? 1.0 : group.surge;
+    }
+
+    // Each group's surge by index; 0 for a group not yet in the map, as no surge is 0
+    private double[] surges() {
+        double[] surges = new double[groupCount.get()];
+        for (Group group : groups.values()) {
+            if (group.index < surges.length) surges[group.index] = group.surge;
+        }
+        return surges;
+    }
+
+    // The group's surge in the snapshot, or its current one if it was added since
+    private static double surge(Group group, double[] surges) {
+        double surge = group.index < surges.length ? surges[group.index] : 0;
+        return surge != 0 ? surge : group.surge;
+    }
+
+    // Called with the group's lock held
+    private void updateSurge(Group group) {
+        group.surge = tariff.rules.surgeMultiplier(group.cars == 0 ? 0 : (double) group.rented / group.cars);
+    }
+
+    // Recompiles around today once the table window has drifted past the requested dates
+    private Tariff tariffFor(long startDay, int days) {
+        Tariff current = tariff;
+        return current.covers(startDay, days) ? current : recompile(startDay, days);
+    }
+
+    private synchronized Tariff recompile(long startDay, int days) {
+        Tariff current = tariff;
+        long firstDay = today() - PAST_DAYS;
+        if (firstDay == current.firstDay) return current;
+        Tariff recompiled = new Tariff(current.rules, firstDay);
+        if (!recompiled.covers(startDay, days)) return current;
+        tariff = recompiled;
+        return recompiled;
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    private static double roundToPaise(double rupees) {
+        return Math.round(rupees * 100) / 100.0;
+    }
+}
@@ -0,0 +1,84 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Tariff settings for PricingEngine. A day's rate is the car's base price
+// times the weekend and season multipliers for that day; the rental total is
+// then reduced by the best length-of-rental discount it qualifies for and
+// scaled by the surge multiplier for how much of the car's brand and model is
+// currently rented. The default rules leave the base price unchanged.
+//
+// Rules are plain settings; PricingEngine compiles a copy, so changing a
+// PricingRules after handing it over has no effect until it is set again.
+class PricingRules {
+    private double weekendMultiplier = 1.0;
+    private final Map<Month, Double> seasonMultipliers = new EnumMap<>(Month.class);
+    private final TreeMap<Integer, Double> lengthDiscounts = new TreeMap<>();
+    private final TreeMap<Double, Double> surgeTiers = new TreeMap<>();
+
+    public void setWeekendMultiplier(double multiplier) {
+        requirePositive(multiplier);
+        weekendMultiplier = multiplier;
+    }
+
+    public void setSeasonMultiplier(Month month, double multiplier) {
+        requirePositive(multiplier);
+        seasonMultipliers.put(month, multiplier);
+    }
+
+    // Rentals of at least minDays days get percentOff (0-100) off the total
+    public void addLengthDiscount(int minDays, double percentOff) {
+        if (minDays <= 0 || percentOff < 0 || percentOff >= 100) {
+            throw new IllegalArgumentException("Invalid length discount: " + percentOff + "% from " + minDays + " days.");
+        }
+        lengthDiscounts.put(minDays, percentOff);
+    }
+
+    // Applies the multiplier once at least minUtilization (0-1) of a brand and model is rented
+    public void addSurgeTier(double minUtilization, double multiplier) {
+        if (minUtilization < 0 || minUtilization > 1) {
+            throw new IllegalArgumentException("Utilization must be between 0 and 1.");
+        }
+        requirePositive(multiplier);
+        surgeTiers.put(minUtilization, multiplier);
+    }
+
+    public double dayMultiplier(LocalDate day) {
+        DayOfWeek dayOfWeek = day.getDayOfWeek();
+        boolean weekend = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+        return (weekend ? weekendMultiplier : 1.0) * seasonMultipliers.getOrDefault(day.getMonth(), 1.0);
+    }
+
+    public double lengthMultiplier(int days) {
+        Map.Entry<Integer, Double> discount = lengthDiscounts.floorEntry(days);
+        return discount == null ? 1.0 : 1.0 - discount.getValue() / 100.0;
+    }
+
+    public double surgeMultiplier(double utilization) {
+        Map.Entry<Double, Double> tier = surgeTiers.floorEntry(utilization);
+        return tier == null ? 1.0 : tier.getValue();
+    }
+
+    // Longest rental length whose discount differs from a shorter one
+    public int longestDiscountThreshold() {
+        return lengthDiscounts.isEmpty() ? 0 : lengthDiscounts.lastKey();
+    }
+
+    public PricingRules copy() {
+        PricingRules copy = new PricingRules();
+        copy.weekendMultiplier = weekendMultiplier;
+        copy.seasonMultipliers.putAll(seasonMultipliers);
+        copy.lengthDiscounts.putAll(lengthDiscounts);
+        copy.surgeTiers.putAll(surgeTiers);
+        return copy;
+    }
+
+    private static void requirePositive(double multiplier) {
+        if (!(multiplier > 0)) {
+            throw new IllegalArgumentException("Multipliers must be greater than zero.");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+// One booking in a batch passed to RentalService.rentCars
+class RentRequest {
+    private final String carId;
+    private final String customerName;
+    private final String phoneNumber;
+    private final int days;
+
+    public RentRequest(String carId, String customerName, String phoneNumber, int days) {
+        this.carId = carId;
+        this.customerName = customerName;
+        this.phoneNumber = phoneNumber;
+        this.days = days;
+    }
+
+    public String getCarId() { return carId; }
+    public String getCustomerName() { return customerName; }
+    public String getPhoneNumber() { return phoneNumber; }
+    public int getDays() { return days; }
+}
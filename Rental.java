@@ -0,0 +1,77 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+class Rental {
+    // Late returns pay this multiple of the car's base day rate for every day, or part of
+    // a day, past the due time
+    static final double LATE_FEE_MULTIPLIER = 1.5;
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    private Car car;
+    private Customer customer;
+    private int days;
+    private LocalDateTime rentalDate;
+    // Written by whichever thread returns the car, read by every client
+    private volatile LocalDateTime returnDate;
+    private volatile boolean isReturned;
+    private double totalPrice;
+
+    public Rental(Car car, Customer customer, int days) {
+        this(car, customer, days, LocalDateTime.now(), car.calculatePrice(days));
+    }
+
+    // Restores a rental exactly as it was recorded, e.g. when replaying the journal
+    public Rental(Car car, Customer customer, int days, LocalDateTime rentalDate, double totalPrice) {
+        this.car = car;
+        this.customer = customer;
+        this.days = days;
+        this.rentalDate = rentalDate;
+        this.isReturned = false;
+        this.totalPrice = totalPrice;
+    }
+
+    public Car getCar() { return car; }
+    public Customer getCustomer() { return customer; }
+    public int getDays() { return days; }
+    public LocalDateTime getRentalDate() { return rentalDate; }
+    public LocalDateTime getReturnDate() { return returnDate; }
+    public boolean isReturned() { return isReturned; }
+    public double getTotalPrice() { return totalPrice; }
+    public LocalDateTime getDueDate() { return rentalDate.plusDays(days); }
+
+    public boolean isOverdue(LocalDateTime now) {
+        return !isReturned && now.isAfter(getDueDate());
+    }
+
+    // Worked out from the recorded dates, so it comes out the same after a replay or import
+    public double getLateFee() {
+        LocalDateTime returned = returnDate;
+        if (returned == null || !returned.isAfter(getDueDate())) return 0;
+        long lateDays = (Duration.between(getDueDate(), returned).toMinutes() + MINUTES_PER_DAY - 1) / MINUTES_PER_DAY;
+        return Math.round(Math.max(1, lateDays) * car.getBasePricePerDay() * LATE_FEE_MULTIPLIER * 100) / 100.0;
+    }
+    
+    public void markAsReturned() { 
+        markAsReturned(LocalDateTime.now());
+    }
+
+    public void markAsReturned(LocalDateTime returnDate) {
+        this.returnDate = returnDate;
+        this.isReturned = true;
+    }
+
+    // A car starts at most one rental at a given instant, so this identifies the rental even
+    // when RentalRepository rebuilds it from its columns as a new object
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Rental)) return false;
+        Rental rental = (Rental) other;
+        return car == rental.car && rentalDate.equals(rental.rentalDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(car) + rentalDate.hashCode();
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Off-heap tier for old returned rentals: fixed-width records in a
+// memory-mapped file, read in place. Record i is the rental at ordinal i, so
+// the archive always holds a prefix of the history; RentalRepository sends
+// reads below that prefix here instead of to its heap columns.
+//
+// Record layout (RECORD_BYTES): int car and int customer (positions in the
+// repository's tables), int days, long rental epoch second, int rental nanos,
+// long return epoch second, int return nanos, long price in paise.
+//
+// The file is working storage, not a backup: the snapshot and journal still
+// hold the whole history, and the file is truncated when it is opened. It is
+// mapped CHUNK_RECORDS records at a time so it grows without remapping what
+// is already there. One thread appends at a time; readers use absolute gets,
+// which need no locking, on records below the published size.
+class RentalArchive implements Closeable {
+    public static final int RECORD_BYTES = 44;
+    private static final int CHUNK_RECORDS = 1 << 20;
+
+    private static final int CAR = 0;
+    private static final int CUSTOMER = 4;
+    private static final int DAYS = 8;
+    private static final int RENTAL_SECOND = 12;
+    private static final int RENTAL_NANO = 20;
+    private static final int RETURN_SECOND = 24;
+    private static final int RETURN_NANO = 32;
+    private static final int PRICE_PAISE = 36;
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private volatile int size;
+
+    public RentalArchive(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // Writes the record for the next ordinal; callers must not append concurrently
+    public void append(int car, int customer, int days, long rentalSecond, int rentalNano,
+                       long returnSecond, int returnNano, long pricePaise) throws IOException {
+        int index = size;
+        MappedByteBuffer[] mapped = chunks;
+        if (index / CHUNK_RECORDS == mapped.length) {
+            mapped = Arrays.copyOf(mapped, mapped.length + 1);
+            long start = (long) index * RECORD_BYTES;
+            mapped[mapped.length - 1] = (MappedByteBuffer) channel
+                .map(FileChannel.MapMode.READ_WRITE, start, (long) CHUNK_RECORDS * RECORD_BYTES)
+                .order(ByteOrder.nativeOrder());
+            chunks = mapped;
+        }
+        MappedByteBuffer chunk = mapped[index / CHUNK_RECORDS];
+        int offset = (index % CHUNK_RECORDS) * RECORD_BYTES;
+        chunk.putInt(offset + CAR, car);
+        chunk.putInt(offset + CUSTOMER, customer);
+        chunk.putInt(offset + DAYS, days);
+        chunk.putLong(offset + RENTAL_SECOND, rentalSecond);
+        chunk.putInt(offset + RENTAL_NANO, rentalNano);
+        chunk.putLong(offset + RETURN_SECOND, returnSecond);
+        chunk.putInt(offset + RETURN_NANO, returnNano);
+        chunk.putLong(offset + PRICE_PAISE, pricePaise);
+        // Publish after the record is written
+        size = index + 1;
+    }
+
+    public int size() { return size; }
+
+    public int car(int ordinal) { return chunk(ordinal).getInt(offset(ordinal) + CAR); }
+    public int customer(int ordinal) { return chunk(ordinal).getInt(offset(ordinal) + CUSTOMER); }
+    public int days(int ordinal) { return chunk(ordinal).getInt(offset(ordinal) + DAYS); }
+    public long rentalSecond(int ordinal) { return chunk(ordinal).getLong(offset(ordinal) + RENTAL_SECOND); }
+    public int rentalNano(int ordinal) { return chunk(ordinal).getInt(offset(ordinal) + RENTAL_NANO); }
+    public long returnSecond(int ordinal) { return chunk(ordinal).getLong(offset(ordinal) + RETURN_SECOND); }
+    public int returnNano(int ordinal) { return chunk(ordinal).getInt(offset(ordinal) + RETURN_NANO); }
+    public long pricePaise(int ordinal) { return chunk(ordinal).getLong(offset(ordinal) + PRICE_PAISE); }
+
+    // The mapped chunks stay readable after the channel is closed
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer chunk(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) throw new IndexOutOfBoundsException("Archived ordinal: " + ordinal);
+        return chunks[ordinal / CHUNK_RECORDS];
+    }
+
+    private static int offset(int ordinal) {
+        return (ordinal % CHUNK_RECORDS) * RECORD_BYTES;
+    }
+}
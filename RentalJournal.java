@@ -0,0 +1,556 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Append-only binary log of every car-add, rent, return, reservation change
+// and imported past rental, written through a FileChannel. Replaying it rebuilds the booking state.
+//
+// The log is split into numbered segment files (journal-<n>.log) in one
+// directory. rotate() seals the current segment and starts the next one, so
+// a snapshot can be built from sealed segments while bookings keep appending.
+//
+// Record layout: int length, int crc32, byte type, payload. length and crc
+// cover the type byte and the payload, so a record torn by a crash is
+// detected on replay and cut off.
+//
+// In GROUP_COMMIT mode appends only queue the record; a single flusher thread
+// writes everything queued since its last pass with one gathering write and
+// one fsync, so concurrent bookings share a disk flush. Callers block in
+// awaitDurable() until their record is on disk.
+class RentalJournal implements AutoCloseable {
+    enum SyncMode { GROUP_COMMIT, PER_OPERATION }
+
+    // Receives the decoded records during replay, in the order they were appended
+    interface Handler {
+        void carAdded(String carId, String brand, String model, double basePricePerDay);
+        void carRented(String carId, String customerId, String customerName, String phoneNumber,
+                       int days, LocalDateTime rentalDate, double totalPrice);
+        void carReturned(String carId, LocalDateTime returnDate);
+        void carReserved(String reservationId, String carId, String customerId, String customerName,
+                         String phoneNumber, LocalDate startDate, LocalDate endDate, double totalPrice);
+        void reservationCancelled(String reservationId);
+        void reservationStarted(String reservationId, LocalDateTime rentalDate);
+        // A rental that was already returned when it was recorded, such as imported history
+        void rentalImported(String carId, String customerId, String customerName, String phoneNumber,
+                            int days, LocalDateTime rentalDate, double totalPrice, LocalDateTime returnDate);
+        // The car left the fleet, as when it moves to another branch; carAdded brings it back
+        void carRetired(String carId);
+    }
+
+    private static final byte CAR_ADDED = 1;
+    private static final byte CAR_RENTED = 2;
+    private static final byte CAR_RETURNED = 3;
+    private static final byte CAR_RESERVED = 4;
+    private static final byte RESERVATION_CANCELLED = 5;
+    private static final byte RESERVATION_STARTED = 6;
+    private static final byte RENTAL_IMPORTED = 7;
+    private static final byte CAR_RETIRED = 8;
+    private static final byte GROUP_RENTED = 9;
+    private static final byte GROUP_RETURNED = 10;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.log");
+
+    // Queued in place of a record to make the flusher switch segments at that point
+    private static final ByteBuffer ROTATE = ByteBuffer.allocate(0);
+
+    private final Path directory;
+    private final SyncMode syncMode;
+    private final Thread flusher;
+
+    // Written by the flusher in GROUP_COMMIT mode, under the lock otherwise
+    private FileChannel channel;
+    private long writeSegment;
+
+    // All guarded by this
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appendedSequence;
+    private long durableSequence;
+    private long appendSegment;
+    private IOException failure;
+    private boolean closed;
+
+    // Opens the newest segment at or after firstSegment for appending, creating it if needed
+    public RentalJournal(Path directory, long firstSegment, SyncMode syncMode) throws IOException {
+        this.directory = directory;
+        this.syncMode = syncMode;
+        List<Long> existing = segments(directory);
+        long latest = existing.isEmpty() ? firstSegment : Math.max(firstSegment, existing.get(existing.size() - 1));
+        this.appendSegment = latest;
+        this.writeSegment = latest;
+        this.channel = openSegment(latest);
+        this.channel.position(channel.size());
+        if (syncMode == SyncMode.GROUP_COMMIT) {
+            flusher = new Thread(this::flushLoop, "rental-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    public Path getDirectory() { return directory; }
+
+    public static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("journal-%010d.log", segment));
+    }
+
+    // Segment numbers present in the directory, oldest first
+    public static List<Long> segments(Path directory) throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) found.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    // Replays every segment from firstSegment up to the one open for appending. Only
+    // that last segment may end in a torn record; it is truncated after the last good one.
+    public synchronized void replay(long firstSegment, Handler handler) throws IOException {
+        for (long segment : segments(directory)) {
+            if (segment >= firstSegment && segment < appendSegment) {
+                replaySegment(segmentPath(directory, segment), handler);
+            }
+        }
+        long goodPosition = replayFrom(channel, handler);
+        if (goodPosition < channel.size()) {
+            channel.truncate(goodPosition);
+            channel.force(true);
+        }
+        channel.position(goodPosition);
+    }
+
+    // Replays one sealed segment; a damaged record here means data loss, not a torn append
+    public static void replaySegment(Path file, Handler handler) throws IOException {
+        try (FileChannel sealed = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (replayFrom(sealed, handler) < sealed.size()) {
+                throw new IOException("Journal segment " + file + " is damaged.");
+            }
+        }
+    }
+
+    // Seals the current segment and starts the next one. Everything appended before
+    // this call lands in the sealed segment, which is durable when this returns.
+    public long rotate() throws IOException {
+        long sealed;
+        long sequence;
+        synchronized (this) {
+            checkWritable();
+            sealed = appendSegment++;
+            if (syncMode == SyncMode.PER_OPERATION) {
+                switchSegment(appendSegment);
+                return sealed;
+            }
+            pending.add(ROTATE);
+            sequence = ++appendedSequence;
+            notifyAll();
+        }
+        awaitDurable(sequence);
+        return sealed;
+    }
+
+    public long logCarAdded(Car car) {
+        byte[] carId = utf8(car.getCarId());
+        byte[] brand = utf8(car.getBrand());
+        byte[] model = utf8(car.getModel());
+        ByteBuffer record = newRecord(CAR_ADDED, strings(carId, brand, model) + 8);
+        putString(record, carId);
+        putString(record, brand);
+        putString(record, model);
+        record.putDouble(car.getBasePricePerDay());
+        return append(record);
+    }
+
+    public long logRented(Rental rental) {
+        Customer customer = rental.getCustomer();
+        byte[] carId = utf8(rental.getCar().getCarId());
+        byte[] customerId = utf8(customer.getCustomerId());
+        byte[] name = utf8(customer.getName());
+        byte[] phone = utf8(customer.getPhoneNumber());
+        ByteBuffer record = newRecord(CAR_RENTED, strings(carId, customerId, name, phone) + 4 + 12 + 8);
+        putString(record, carId);
+        putString(record, customerId);
+        putString(record, name);
+        putString(record, phone);
+        record.putInt(rental.getDays());
+        putDateTime(record, rental.getRentalDate());
+        record.putDouble(rental.getTotalPrice());
+        return append(record);
+    }
+
+    // The whole group goes into one record, so replay sees all of its rentals or none
+    public long logGroupRented(List<Rental> group) {
+        byte[][] fields = new byte[group.size() * 4][];
+        int payloadBytes = 4;
+        for (int i = 0; i < group.size(); i++) {
+            Rental rental = group.get(i);
+            Customer customer = rental.getCustomer();
+            fields[i * 4] = utf8(rental.getCar().getCarId());
+            fields[i * 4 + 1] = utf8(customer.getCustomerId());
+            fields[i * 4 + 2] = utf8(customer.getName());
+            fields[i * 4 + 3] = utf8(customer.getPhoneNumber());
+            payloadBytes += strings(fields[i * 4], fields[i * 4 + 1], fields[i * 4 + 2], fields[i * 4 + 3]) + 4 + 12 + 8;
+        }
+        ByteBuffer record = newRecord(GROUP_RENTED, payloadBytes);
+        record.putInt(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            Rental rental = group.get(i);
+            for (int field = 0; field < 4; field++) putString(record, fields[i * 4 + field]);
+            record.putInt(rental.getDays());
+            putDateTime(record, rental.getRentalDate());
+            record.putDouble(rental.getTotalPrice());
+        }
+        return append(record);
+    }
+
+    // Logged before the rentals are closed, so the return date is passed in
+    public long logGroupReturned(List<Rental> group, LocalDateTime returnDate) {
+        byte[][] carIds = new byte[group.size()][];
+        for (int i = 0; i < group.size(); i++) carIds[i] = utf8(group.get(i).getCar().getCarId());
+        ByteBuffer record = newRecord(GROUP_RETURNED, 4 + strings(carIds) + group.size() * 12);
+        record.putInt(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            putString(record, carIds[i]);
+            putDateTime(record, returnDate);
+        }
+        return append(record);
+    }
+
+    public long logReturned(Rental rental, LocalDateTime returnDate) {
+        byte[] carId = utf8(rental.getCar().getCarId());
+        ByteBuffer record = newRecord(CAR_RETURNED, strings(carId) + 12);
+        putString(record, carId);
+        putDateTime(record, returnDate);
+        return append(record);
+    }
+
+    public long logReserved(Reservation reservation) {
+        Customer customer = reservation.getCustomer();
+        byte[] reservationId = utf8(reservation.getReservationId());
+        byte[] carId = utf8(reservation.getCar().getCarId());
+        byte[] customerId = utf8(customer.getCustomerId());
+        byte[] name = utf8(customer.getName());
+        byte[] phone = utf8(customer.getPhoneNumber());
+        ByteBuffer record = newRecord(CAR_RESERVED, strings(reservationId, carId, customerId, name, phone) + 8 + 8 + 8);
+        putString(record, reservationId);
+        putString(record, carId);
+        putString(record, customerId);
+        putString(record, name);
+        putString(record, phone);
+        record.putLong(reservation.getStartDate().toEpochDay());
+        record.putLong(reservation.getEndDate().toEpochDay());
+        record.putDouble(reservation.getTotalPrice());
+        return append(record);
+    }
+
+    public long logReservationCancelled(Reservation reservation) {
+        byte[] reservationId = utf8(reservation.getReservationId());
+        ByteBuffer record = newRecord(RESERVATION_CANCELLED, strings(reservationId));
+        putString(record, reservationId);
+        return append(record);
+    }
+
+    public long logReservationStarted(Reservation reservation, Rental rental) {
+        byte[] reservationId = utf8(reservation.getReservationId());
+        ByteBuffer record = newRecord(RESERVATION_STARTED, strings(reservationId) + 12);
+        putString(record, reservationId);
+        putDateTime(record, rental.getRentalDate());
+        return append(record);
+    }
+
+    public long logImported(Rental rental) {
+        Customer customer = rental.getCustomer();
+        byte[] carId = utf8(rental.getCar().getCarId());
+        byte[] customerId = utf8(customer.getCustomerId());
+        byte[] name = utf8(customer.getName());
+        byte[] phone = utf8(customer.getPhoneNumber());
+        ByteBuffer record = newRecord(RENTAL_IMPORTED, strings(carId, customerId, name, phone) + 4 + 12 + 8 + 12);
+        putString(record, carId);
+        putString(record, customerId);
+        putString(record, name);
+        putString(record, phone);
+        record.putInt(rental.getDays());
+        putDateTime(record, rental.getRentalDate());
+        record.putDouble(rental.getTotalPrice());
+        putDateTime(record, rental.getReturnDate());
+        return append(record);
+    }
+
+    public long logCarRetired(Car car) {
+        byte[] carId = utf8(car.getCarId());
+        ByteBuffer record = newRecord(CAR_RETIRED, strings(carId));
+        putString(record, carId);
+        return append(record);
+    }
+
+    // Blocks until every record up to the given sequence number has been fsynced
+    public synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        while (durableSequence < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durableSequence < sequence) {
+            throw new UncheckedIOException("Rental journal write failed", failure);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+
+    private long append(ByteBuffer record) {
+        seal(record);
+        return enqueue(record);
+    }
+
+    private synchronized long enqueue(ByteBuffer record) {
+        checkWritable();
+        if (syncMode == SyncMode.PER_OPERATION) {
+            try {
+                writeFully(new ByteBuffer[] { record });
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException("Rental journal write failed", e);
+            }
+            durableSequence = ++appendedSequence;
+            return durableSequence;
+        }
+        pending.add(record);
+        appendedSequence++;
+        notifyAll();
+        return appendedSequence;
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Rental journal write failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Rental journal is closed.");
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long batchSequence;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) return;
+                batch = pending;
+                batchSequence = appendedSequence;
+                pending = new ArrayList<>();
+            }
+            try {
+                int runStart = 0;
+                for (int i = 0; i <= batch.size(); i++) {
+                    if (i < batch.size() && batch.get(i) != ROTATE) continue;
+                    if (i > runStart) {
+                        writeFully(batch.subList(runStart, i).toArray(new ByteBuffer[0]));
+                    }
+                    channel.force(false);
+                    if (i < batch.size()) switchSegment(writeSegment + 1);
+                    runStart = i + 1;
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durableSequence = batchSequence;
+                notifyAll();
+            }
+        }
+    }
+
+    private void switchSegment(long segment) throws IOException {
+        FileChannel next = openSegment(segment);
+        channel.force(true);
+        channel.close();
+        channel = next;
+        writeSegment = segment;
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(segmentPath(directory, segment),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    // Decodes intact records from the start of the channel and returns where they end
+    private static long replayFrom(FileChannel source, Handler handler) throws IOException {
+        long goodPosition = 0;
+        source.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(source), 1 << 16));
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > source.size()) break;
+                body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) break;
+            } catch (EOFException e) {
+                break;
+            }
+            decode(ByteBuffer.wrap(body), handler);
+            goodPosition += RECORD_HEADER_BYTES + body.length;
+        }
+        return goodPosition;
+    }
+
+    private static void decode(ByteBuffer body, Handler handler) throws IOException {
+        byte type = body.get();
+        switch (type) {
+            case CAR_ADDED:
+                handler.carAdded(getString(body), getString(body), getString(body), body.getDouble());
+                break;
+            case CAR_RENTED:
+                handler.carRented(getString(body), getString(body), getString(body), getString(body),
+                    body.getInt(), getDateTime(body), body.getDouble());
+                break;
+            case CAR_RETURNED:
+                handler.carReturned(getString(body), getDateTime(body));
+                break;
+            case CAR_RESERVED:
+                handler.carReserved(getString(body), getString(body), getString(body), getString(body), getString(body),
+                    LocalDate.ofEpochDay(body.getLong()), LocalDate.ofEpochDay(body.getLong()), body.getDouble());
+                break;
+            case RESERVATION_CANCELLED:
+                handler.reservationCancelled(getString(body));
+                break;
+            case RESERVATION_STARTED:
+                handler.reservationStarted(getString(body), getDateTime(body));
+                break;
+            case RENTAL_IMPORTED:
+                handler.rentalImported(getString(body), getString(body), getString(body), getString(body),
+                    body.getInt(), getDateTime(body), body.getDouble(), getDateTime(body));
+                break;
+            case CAR_RETIRED:
+                handler.carRetired(getString(body));
+                break;
+            case GROUP_RENTED:
+                for (int remaining = body.getInt(); remaining > 0; remaining--) {
+                    handler.carRented(getString(body), getString(body), getString(body), getString(body),
+                        body.getInt(), getDateTime(body), body.getDouble());
+                }
+                break;
+            case GROUP_RETURNED:
+                for (int remaining = body.getInt(); remaining > 0; remaining--) {
+                    handler.carReturned(getString(body), getDateTime(body));
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // Allocates a record with its header filled in; seal() adds the checksum once the payload is written
+    private static ByteBuffer newRecord(byte type, int payloadBytes) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + 1 + payloadBytes);
+        record.putInt(1 + payloadBytes);
+        record.putInt(0);
+        record.put(type);
+        return record;
+    }
+
+    private static void seal(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, record.position() - RECORD_HEADER_BYTES);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+    }
+
+    private static int strings(byte[]... values) {
+        int total = 0;
+        for (byte[] value : values) total += 2 + value.length;
+        return total;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Value too long for the rental journal.");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void putDateTime(ByteBuffer buffer, LocalDateTime value) {
+        buffer.putLong(value.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(value.getNano());
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer buffer) {
+        return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,64 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Checks that every way of booking a car refuses lengths past
+// RentalService.MAX_RENTAL_DAYS up front, with an IllegalArgumentException,
+// and leaves the car free. Run with java RentalLengthCheck; it exits
+// non-zero on the first failed check.
+//
+// A length of millions of days used to fill the calendar a day at a time until
+// the JVM ran out of memory, with the calendar locked; the whole check must
+// finish within a few seconds.
+class RentalLengthCheck {
+    private static final int TOO_LONG = 5_000_000;
+    private static final long DEADLINE_NANOS = 10_000_000_000L;
+
+    public static void main(String[] args) {
+        long started = System.nanoTime();
+        RentalService service = new RentalService();
+        service.addCar("C1", "Brand", "Model", 1000);
+        service.addCar("C2", "Brand", "Model", 1000);
+        LocalDate today = LocalDate.now();
+        int max = RentalService.MAX_RENTAL_DAYS;
+
+        for (int days : new int[] { max + 1, TOO_LONG, Integer.MAX_VALUE }) {
+            refused(() -> service.rentCar("C1", "Customer", "9800000000", days), "rentCar for " + days + " days");
+            refused(() -> service.quote("C1", today, days), "quote for " + days + " days");
+            refused(() -> service.quote(service.getCars(), today, days), "fleet quote for " + days + " days");
+            refused(() -> service.rentGroup(List.of(new RentRequest("C1", "Customer", "9800000000", 2),
+                new RentRequest("C2", "Customer", "9800000000", days))), "group rental with one car for " + days + " days");
+            refused(() -> service.reserveCar("C1", "Customer", "9800000000", today.plusDays(1), today.plusDays(1 + (long) days)),
+                "reservation for " + days + " days");
+            LocalDateTime rented = LocalDateTime.now().minusDays(2);
+            BatchResult<Rental> imported = service.importRentals(List.of(
+                new RentalRecord("C1", "Customer", "9800000000", days, rented, 100, rented.plusDays(1))));
+            check(imported.getSucceeded().isEmpty() && imported.hasFailures(), "import of a rental for " + days + " days is rejected");
+        }
+        check(service.findActiveRental("C1") == null && service.findActiveRental("C2") == null, "refused rentals leave the cars free");
+        check(service.getReservations().isEmpty(), "refused reservations leave no reservation");
+        check(service.findFreeCars(today, today.plusDays(max)).size() == 2, "refused bookings leave the calendar empty");
+
+        // The longest allowed booking still goes through
+        check(service.quote("C1", today, max) > 0, "a quote for the maximum length is priced");
+        service.rentCar("C1", "Customer", "9800000000", max);
+        service.reserveCar("C2", "Customer", "9800000000", today.plusDays(1), today.plusDays(1 + max));
+        check(service.findFreeCars(today.plusDays(max - 1), today.plusDays(max)).isEmpty(), "the maximum bookings hold their last day");
+
+        check(System.nanoTime() - started < DEADLINE_NANOS, "the check finished within the deadline");
+        System.out.println("RentalLengthCheck passed");
+    }
+
+    private static void refused(Runnable booking, String what) {
+        try {
+            booking.run();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("Failed: " + what + " is refused");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError("Failed: " + what);
+    }
+}
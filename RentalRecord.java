@@ -0,0 +1,32 @@
+import java.time.LocalDateTime;
+
+// One rental made elsewhere, passed to RentalService.importRentals. returnDate
+// is null while the rental is still open.
+class RentalRecord {
+    private final String carId;
+    private final String customerName;
+    private final String phoneNumber;
+    private final int days;
+    private final LocalDateTime rentalDate;
+    private final double totalPrice;
+    private final LocalDateTime returnDate;
+
+    public RentalRecord(String carId, String customerName, String phoneNumber, int days,
+                        LocalDateTime rentalDate, double totalPrice, LocalDateTime returnDate) {
+        this.carId = carId;
+        this.customerName = customerName;
+        this.phoneNumber = phoneNumber;
+        this.days = days;
+        this.rentalDate = rentalDate;
+        this.totalPrice = totalPrice;
+        this.returnDate = returnDate;
+    }
+
+    public String getCarId() { return carId; }
+    public String getCustomerName() { return customerName; }
+    public String getPhoneNumber() { return phoneNumber; }
+    public int getDays() { return days; }
+    public LocalDateTime getRentalDate() { return rentalDate; }
+    public double getTotalPrice() { return totalPrice; }
+    public LocalDateTime getReturnDate() { return returnDate; }
+}
@@ -0,0 +1,64 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+// Aggregates over the whole rental history, as produced by ReportEngine.
+// Revenue is in rupees; utilization is the share of the report window each
+// car spent rented, from 0 to 1.
+class RentalReport {
+    private final int rentals;
+    private final double revenue;
+    private final double averageDays;
+    private final Map<String, Double> revenueByBrand;
+    private final Map<String, Double> revenueByModel;
+    private final SortedMap<LocalDate, Double> revenueByDay;
+    private final Map<Car, Double> utilizationByCar;
+    private final List<CustomerTotal> topCustomers;
+
+    // One customer's rentals; customers are told apart by phone number
+    static class CustomerTotal {
+        private final String name;
+        private final String phoneNumber;
+        private final int rentals;
+        private final double revenue;
+
+        CustomerTotal(String name, String phoneNumber, int rentals, double revenue) {
+            this.name = name;
+            this.phoneNumber = phoneNumber;
+            this.rentals = rentals;
+            this.revenue = revenue;
+        }
+
+        public String getName() { return name; }
+        public String getPhoneNumber() { return phoneNumber; }
+        public int getRentals() { return rentals; }
+        public double getRevenue() { return revenue; }
+    }
+
+    RentalReport(int rentals, double revenue, double averageDays, Map<String, Double> revenueByBrand,
+                 Map<String, Double> revenueByModel, SortedMap<LocalDate, Double> revenueByDay,
+                 Map<Car, Double> utilizationByCar, List<CustomerTotal> topCustomers) {
+        this.rentals = rentals;
+        this.revenue = revenue;
+        this.averageDays = averageDays;
+        this.revenueByBrand = Collections.unmodifiableMap(revenueByBrand);
+        this.revenueByModel = Collections.unmodifiableMap(revenueByModel);
+        this.revenueByDay = Collections.unmodifiableSortedMap(revenueByDay);
+        this.utilizationByCar = Collections.unmodifiableMap(utilizationByCar);
+        this.topCustomers = Collections.unmodifiableList(topCustomers);
+    }
+
+    public int getRentals() { return rentals; }
+    public double getRevenue() { return revenue; }
+    // Booked days per rental
+    public double getAverageDays() { return averageDays; }
+    public Map<String, Double> getRevenueByBrand() { return revenueByBrand; }
+    // Keyed by "brand model"
+    public Map<String, Double> getRevenueByModel() { return revenueByModel; }
+    public SortedMap<LocalDate, Double> getRevenueByDay() { return revenueByDay; }
+    public Map<Car, Double> getUtilizationByCar() { return utilizationByCar; }
+    // Highest revenue first
+    public List<CustomerTotal> getTopCustomers() { return topCustomers; }
+}
@@ -0,0 +1,473 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Indexed rental store. Rentals are appended in creation order and keep that
+// position (their ordinal) for good; RentalSearchIndex and RentalTimeIndex
+// refer to rentals by ordinal.
+//
+// Open rentals are kept as Rental objects. When a rental is returned it is
+// moved into primitive columns (car and customer table positions, dates as
+// epoch seconds plus nanos, price in paise) and its object slot is cleared,
+// so closed history costs a few dozen bytes per rental instead of a graph of
+// objects. get() builds a Rental from the columns on demand; the accessors
+// below read single fields without building one.
+//
+// archive() moves the oldest returned rentals further, into a RentalArchive
+// off the heap, and drops their slots and columns. Reads of archived ordinals
+// go to the mapped file; callers cannot tell the difference.
+//
+// Safe for concurrent use: the active index is a ConcurrentHashMap (one
+// open rental per car is checked under the repository lock), appends and
+// moves into the columns are serialized, and a cleared slot is published with release
+// semantics after its columns are written, so readers see a stable prefix of
+// the history without locking.
+class RentalRepository {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Rental[].class);
+
+    private final Map<String, Active> activeByCarId = new ConcurrentHashMap<>();
+    private final Map<String, Ordinals> ordinalsByCustomerId = new ConcurrentHashMap<>();
+    private volatile Store store = new Store(null, 0, new Rental[16], new Columns(16));
+    private volatile int size;
+    private final Object archiveLock = new Object();
+
+    // Tables the columns refer into; grown and written under the repository lock
+    private final Map<Car, Integer> carPositions = new IdentityHashMap<>();
+    private final Map<Customer, Integer> customerPositions = new IdentityHashMap<>();
+    private volatile Car[] carTable = new Car[16];
+    private volatile Customer[] customerTable = new Customer[16];
+
+    // Receives rentals from scan() as plain fields; returnSecond is OPEN for rentals not returned
+    interface Visitor {
+        void visit(Car car, Customer customer, int days, long rentalSecond, long returnSecond, long pricePaise);
+    }
+
+    public static final long OPEN = Long.MAX_VALUE;
+
+    private static final class Active {
+        final Rental rental;
+        final int ordinal;
+
+        Active(Rental rental, int ordinal) {
+            this.rental = rental;
+            this.ordinal = ordinal;
+        }
+    }
+
+    // Ordinals below base are in the archive; slot and column i hold ordinal base + i.
+    // Replaced as a whole when it grows or is rebased, so readers see one consistent set.
+    private static final class Store {
+        final RentalArchive archive;
+        final int base;
+        final Rental[] slots;
+        final Columns columns;
+
+        Store(RentalArchive archive, int base, Rental[] slots, Columns columns) {
+            this.archive = archive;
+            this.base = base;
+            this.slots = slots;
+            this.columns = columns;
+        }
+    }
+
+    private static final class Columns {
+        final int[] car;
+        final int[] customer;
+        final int[] days;
+        final long[] rentalSecond;
+        final int[] rentalNano;
+        final long[] returnSecond;
+        final int[] returnNano;
+        final long[] pricePaise;
+
+        Columns(int capacity) {
+            car = new int[capacity];
+            customer = new int[capacity];
+            days = new int[capacity];
+            rentalSecond = new long[capacity];
+            rentalNano = new int[capacity];
+            returnSecond = new long[capacity];
+            returnNano = new int[capacity];
+            pricePaise = new long[capacity];
+        }
+
+        // Copies entries [from, from + capacity) of another set, padding with zeros
+        Columns(Columns source, int from, int capacity) {
+            car = Arrays.copyOfRange(source.car, from, from + capacity);
+            customer = Arrays.copyOfRange(source.customer, from, from + capacity);
+            days = Arrays.copyOfRange(source.days, from, from + capacity);
+            rentalSecond = Arrays.copyOfRange(source.rentalSecond, from, from + capacity);
+            rentalNano = Arrays.copyOfRange(source.rentalNano, from, from + capacity);
+            returnSecond = Arrays.copyOfRange(source.returnSecond, from, from + capacity);
+            returnNano = Arrays.copyOfRange(source.returnNano, from, from + capacity);
+            pricePaise = Arrays.copyOfRange(source.pricePaise, from, from + capacity);
+        }
+    }
+
+    private static final class Ordinals {
+        private int[] ordinals = new int[2];
+        private int size;
+
+        synchronized void add(int ordinal) {
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            ordinals[size++] = ordinal;
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(ordinals, size);
+        }
+
+        synchronized int[] toArray(int offset, int limit) {
+            int from = Math.min(offset, size);
+            return Arrays.copyOfRange(ordinals, from, from + Math.min(limit, size - from));
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    // Returns the rental's ordinal: its fixed position in the history
+    public int add(Rental rental) {
+        String carId = rental.getCar().getCarId();
+        Active active;
+        synchronized (this) {
+            if (activeByCarId.containsKey(carId)) {
+                throw new IllegalStateException("Car " + carId + " already has an active rental.");
+            }
+            active = new Active(rental, append(rental));
+            activeByCarId.put(carId, active);
+            // Under the same lock as the ordinal, so each customer's list stays oldest first
+            ordinalsByCustomerId.computeIfAbsent(rental.getCustomer().getCustomerId(), id -> new Ordinals()).add(active.ordinal);
+        }
+        return active.ordinal;
+    }
+
+    // Appends a rental that is already returned, such as imported history. It does not
+    // touch the active index, so the car may have an open rental at the same time.
+    public int addReturned(Rental rental) {
+        if (!rental.isReturned()) {
+            throw new IllegalArgumentException("Rental of car " + rental.getCar().getCarId() + " is not returned.");
+        }
+        int ordinal;
+        synchronized (this) {
+            ordinal = append(rental);
+            moveToColumns(ordinal, rental);
+            ordinalsByCustomerId.computeIfAbsent(rental.getCustomer().getCustomerId(), id -> new Ordinals()).add(ordinal);
+        }
+        return ordinal;
+    }
+
+    public Rental findActive(Car car) {
+        Active active = activeByCarId.get(car.getCarId());
+        return active == null ? null : active.rental;
+    }
+
+    public Collection<Rental> active() {
+        List<Rental> open = new ArrayList<>(activeByCarId.size());
+        for (Active active : activeByCarId.values()) open.add(active.rental);
+        return Collections.unmodifiableList(open);
+    }
+
+    // Marks the open rental for this car as returned, drops it from the active index and
+    // moves it into the columns. Only one caller can remove a given rental, so concurrent
+    // returns cannot both succeed.
+    public Rental close(Car car) {
+        return close(car, LocalDateTime.now());
+    }
+
+    public Rental close(Car car, LocalDateTime returnDate) {
+        Active active = activeByCarId.remove(car.getCarId());
+        if (active == null) return null;
+        active.rental.markAsReturned(returnDate);
+        moveToColumns(active.ordinal, active.rental);
+        return active.rental;
+    }
+
+    // Ordinals of the customer's rentals, oldest first
+    public int[] findByCustomer(String customerId) {
+        Ordinals found = ordinalsByCustomerId.get(customerId);
+        return found == null ? new int[0] : found.toArray();
+    }
+
+    // At most limit of those ordinals, starting at the offset-th
+    public int[] findByCustomer(String customerId, int offset, int limit) {
+        Ordinals found = ordinalsByCustomerId.get(customerId);
+        return found == null ? new int[0] : found.toArray(offset, limit);
+    }
+
+    public int countByCustomer(String customerId) {
+        Ordinals found = ordinalsByCustomerId.get(customerId);
+        return found == null ? 0 : found.size();
+    }
+
+    // Read-only view of every rental published so far
+    public List<Rental> history() {
+        int count = size;
+        return new AbstractList<Rental>() {
+            @Override
+            public Rental get(int index) {
+                if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index);
+                return RentalRepository.this.get(index);
+            }
+
+            @Override
+            public int size() { return count; }
+        };
+    }
+
+    // Copies of the open rentals as they stand now, by ordinal, for historyAt
+    public Map<Integer, Rental> openByOrdinal() {
+        Map<Integer, Rental> open = new HashMap<>();
+        for (Active active : activeByCarId.values()) {
+            Rental rental = active.rental;
+            open.put(active.ordinal, new Rental(rental.getCar(), rental.getCustomer(), rental.getDays(),
+                rental.getRentalDate(), rental.getTotalPrice()));
+        }
+        return open;
+    }
+
+    // Read-only view of the first count rentals as they stood when the open ones were copied
+    // by openByOrdinal: those read as still open even if returned since. Rentals are built
+    // from the columns and the archive as they are read, so the view holds no copy of them.
+    public List<Rental> historyAt(int count, Map<Integer, Rental> open) {
+        return new AbstractList<Rental>() {
+            @Override
+            public Rental get(int index) {
+                if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index);
+                Rental rental = open.get(index);
+                return rental != null ? rental : RentalRepository.this.get(index);
+            }
+
+            @Override
+            public int size() { return count; }
+        };
+    }
+
+    // Read-only view of the rentals at the given ordinals, in that order
+    public List<Rental> select(int[] ordinals) {
+        return new AbstractList<Rental>() {
+            @Override
+            public Rental get(int index) { return RentalRepository.this.get(ordinals[index]); }
+
+            @Override
+            public int size() { return ordinals.length; }
+        };
+    }
+
+    // Moves returned rentals whose return date is before the cutoff into the archive, oldest
+    // ordinal first, and frees their heap slots and columns. The archive holds a prefix of the
+    // history, so this stops at the first rental that is still open or was returned later.
+    // Every call must pass the same archive. Returns the number of rentals moved.
+    public int archive(RentalArchive archive, LocalDateTime cutoff) throws IOException {
+        synchronized (archiveLock) {
+            long cutoffSecond = cutoff.toEpochSecond(ZoneOffset.UTC);
+            int cutoffNano = cutoff.getNano();
+            int from = store.base;
+            int ordinal = from;
+            // Returned entries never change again, so they are copied out without the repository lock
+            for (int count = size; ordinal < count; ordinal++) {
+                Store current = store;
+                int index = ordinal - current.base;
+                if (SLOTS.getAcquire(current.slots, index) != null) break;
+                Columns closed = current.columns;
+                long returnSecond = closed.returnSecond[index];
+                if (returnSecond > cutoffSecond || returnSecond == cutoffSecond && closed.returnNano[index] >= cutoffNano) break;
+                archive.append(closed.car[index], closed.customer[index], closed.days[index],
+                    closed.rentalSecond[index], closed.rentalNano[index],
+                    closed.returnSecond[index], closed.returnNano[index], closed.pricePaise[index]);
+            }
+            if (ordinal > from) rebase(archive, ordinal);
+            return ordinal - from;
+        }
+    }
+
+    public int archivedCount() { return store.base; }
+
+    // Feeds the rentals at ordinals [from, to) to the visitor, oldest first, reading the
+    // columns and the archive directly rather than building Rental objects. Takes no lock,
+    // so it can run alongside bookings; dates are UTC epoch seconds.
+    public void scan(int from, int to, Visitor visitor) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range: " + from + " to " + to);
+        }
+        Store current = store;
+        Car[] cars = carTable;
+        Customer[] customers = customerTable;
+        int ordinal = from;
+        RentalArchive archived = current.archive;
+        for (int end = Math.min(to, current.base); ordinal < end; ordinal++) {
+            visitor.visit(cars[archived.car(ordinal)], customers[archived.customer(ordinal)], archived.days(ordinal),
+                archived.rentalSecond(ordinal), archived.returnSecond(ordinal), archived.pricePaise(ordinal));
+        }
+        Columns closed = current.columns;
+        for (; ordinal < to; ordinal++) {
+            int index = ordinal - current.base;
+            Rental rental = (Rental) SLOTS.getAcquire(current.slots, index);
+            if (rental == null) {
+                // The tables may have grown since they were read above
+                if (closed.car[index] >= cars.length) cars = carTable;
+                if (closed.customer[index] >= customers.length) customers = customerTable;
+                visitor.visit(cars[closed.car[index]], customers[closed.customer[index]], closed.days[index],
+                    closed.rentalSecond[index], closed.returnSecond[index], closed.pricePaise[index]);
+            } else {
+                LocalDateTime returnDate = rental.isReturned() ? rental.getReturnDate() : null;
+                visitor.visit(rental.getCar(), rental.getCustomer(), rental.getDays(),
+                    rental.getRentalDate().toEpochSecond(ZoneOffset.UTC),
+                    returnDate == null ? OPEN : returnDate.toEpochSecond(ZoneOffset.UTC),
+                    RentalStatisticsAggregator.toPaise(rental.getTotalPrice()));
+            }
+        }
+    }
+
+    // The rental object if it is open, otherwise a new one built from the columns or the archive
+    public Rental get(int ordinal) {
+        checkOrdinal(ordinal);
+        Store current = store;
+        int index = ordinal - current.base;
+        if (index < 0) {
+            RentalArchive archived = current.archive;
+            Rental restored = new Rental(carTable[archived.car(ordinal)], customerTable[archived.customer(ordinal)],
+                archived.days(ordinal), dateTime(archived.rentalSecond(ordinal), archived.rentalNano(ordinal)),
+                RentalStatisticsAggregator.fromPaise(archived.pricePaise(ordinal)));
+            restored.markAsReturned(dateTime(archived.returnSecond(ordinal), archived.returnNano(ordinal)));
+            return restored;
+        }
+        Rental rental = (Rental) SLOTS.getAcquire(current.slots, index);
+        if (rental != null) return rental;
+        Columns closed = current.columns;
+        Rental restored = new Rental(carTable[closed.car[index]], customerTable[closed.customer[index]],
+            closed.days[index], dateTime(closed.rentalSecond[index], closed.rentalNano[index]),
+            RentalStatisticsAggregator.fromPaise(closed.pricePaise[index]));
+        restored.markAsReturned(dateTime(closed.returnSecond[index], closed.returnNano[index]));
+        return restored;
+    }
+
+    public Car carAt(int ordinal) {
+        checkOrdinal(ordinal);
+        Store current = store;
+        int index = ordinal - current.base;
+        if (index < 0) return carTable[current.archive.car(ordinal)];
+        Rental rental = (Rental) SLOTS.getAcquire(current.slots, index);
+        return rental != null ? rental.getCar() : carTable[current.columns.car[index]];
+    }
+
+    public Customer customerAt(int ordinal) {
+        checkOrdinal(ordinal);
+        Store current = store;
+        int index = ordinal - current.base;
+        if (index < 0) return customerTable[current.archive.customer(ordinal)];
+        Rental rental = (Rental) SLOTS.getAcquire(current.slots, index);
+        return rental != null ? rental.getCustomer() : customerTable[current.columns.customer[index]];
+    }
+
+    public LocalDateTime rentalDateAt(int ordinal) {
+        checkOrdinal(ordinal);
+        Store current = store;
+        int index = ordinal - current.base;
+        if (index < 0) {
+            return dateTime(current.archive.rentalSecond(ordinal), current.archive.rentalNano(ordinal));
+        }
+        Rental rental = (Rental) SLOTS.getAcquire(current.slots, index);
+        if (rental != null) return rental.getRentalDate();
+        Columns closed = current.columns;
+        return dateTime(closed.rentalSecond[index], closed.rentalNano[index]);
+    }
+
+    public boolean isReturnedAt(int ordinal) {
+        checkOrdinal(ordinal);
+        Store current = store;
+        int index = ordinal - current.base;
+        if (index < 0) return true;
+        Rental rental = (Rental) SLOTS.getAcquire(current.slots, index);
+        return rental == null || rental.isReturned();
+    }
+
+    public int size() { return size; }
+    public int activeCount() { return activeByCarId.size(); }
+
+    // Read size before store: append publishes the store first, so it covers any ordinal below size
+    private void checkOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) throw new IndexOutOfBoundsException("Ordinal: " + ordinal);
+    }
+
+    private synchronized int append(Rental rental) {
+        Store current = store;
+        int count = size;
+        int index = count - current.base;
+        if (index == current.slots.length) {
+            current = new Store(current.archive, current.base, Arrays.copyOf(current.slots, index * 2),
+                new Columns(current.columns, 0, index * 2));
+        }
+        current.slots[index] = rental;
+        // Publish the store before the new size so readers never see a size past its end
+        store = current;
+        size = count + 1;
+        return count;
+    }
+
+    // Drops the entries below the new base, which are now in the archive
+    private synchronized void rebase(RentalArchive archive, int base) {
+        Store current = store;
+        int live = size - base;
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(live, 1)) * 2);
+        int from = base - current.base;
+        Rental[] slots = new Rental[capacity];
+        System.arraycopy(current.slots, from, slots, 0, live);
+        store = new Store(archive, base, slots, new Columns(current.columns, from, capacity));
+    }
+
+    private synchronized void moveToColumns(int ordinal, Rental rental) {
+        Store current = store;
+        int index = ordinal - current.base;
+        Columns target = current.columns;
+        target.car[index] = carPosition(rental.getCar());
+        target.customer[index] = customerPosition(rental.getCustomer());
+        target.days[index] = rental.getDays();
+        target.rentalSecond[index] = rental.getRentalDate().toEpochSecond(ZoneOffset.UTC);
+        target.rentalNano[index] = rental.getRentalDate().getNano();
+        target.returnSecond[index] = rental.getReturnDate().toEpochSecond(ZoneOffset.UTC);
+        target.returnNano[index] = rental.getReturnDate().getNano();
+        target.pricePaise[index] = RentalStatisticsAggregator.toPaise(rental.getTotalPrice());
+        // Readers that see the cleared slot with getAcquire also see the column and table writes above
+        SLOTS.setRelease(current.slots, index, (Rental) null);
+    }
+
+    // Called with the repository lock held
+    private int carPosition(Car car) {
+        Integer position = carPositions.get(car);
+        if (position != null) return position;
+        int next = carPositions.size();
+        if (next == carTable.length) carTable = Arrays.copyOf(carTable, next * 2);
+        carTable[next] = car;
+        carPositions.put(car, next);
+        return next;
+    }
+
+    // Called with the repository lock held
+    private int customerPosition(Customer customer) {
+        Integer position = customerPositions.get(customer);
+        if (position != null) return position;
+        int next = customerPositions.size();
+        if (next == customerTable.length) customerTable = Arrays.copyOf(customerTable, next * 2);
+        customerTable[next] = customer;
+        customerPositions.put(customer, next);
+        return next;
+    }
+
+    private static LocalDateTime dateTime(long epochSecond, int nano) {
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Trigram index over the searchable rental fields: car ID, brand, model,
+// customer name and phone. Each distinct lower-cased trigram maps to a sorted
+// list of rental ordinals (positions in RentalRepository's history).
+//
+// A substring query intersects the postings of its trigrams, starting from
+// the shortest list, then confirms each candidate against the fields without
+// allocating. Queries shorter than a trigram cannot use the index and fall
+// back to the same allocation-free check over the whole history.
+class RentalSearchIndex {
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final RentalRepository rentals;
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            // Rentals booked concurrently can be indexed slightly out of order
+            int at = size;
+            while (at > 0 && ordinals[at - 1] > ordinal) at--;
+            System.arraycopy(ordinals, at, ordinals, at + 1, size - at);
+            ordinals[at] = ordinal;
+            size++;
+        }
+
+        boolean contains(int ordinal) {
+            return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+        }
+    }
+
+    public RentalSearchIndex(RentalRepository rentals) {
+        this.rentals = rentals;
+    }
+
+    public void add(int ordinal, Rental rental) {
+        long[] grams = distinctGrams(rental);
+        lock.writeLock().lock();
+        try {
+            for (long gram : grams) {
+                postings.computeIfAbsent(gram, key -> new Postings()).add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Indexes several rentals under one write lock; ordinals[i] belongs to added.get(i)
+    public void addAll(int[] ordinals, List<Rental> added) {
+        long[][] grams = new long[added.size()][];
+        for (int i = 0; i < grams.length; i++) grams[i] = distinctGrams(added.get(i));
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < grams.length; i++) {
+                for (long gram : grams[i]) {
+                    postings.computeIfAbsent(gram, key -> new Postings()).add(ordinals[i]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ordinals of the rentals with a field containing the text, ignoring case, in history order
+    public int[] search(String text) {
+        String query = text.toLowerCase(Locale.ROOT);
+        if (query.length() < GRAM_LENGTH) {
+            return scan(query);
+        }
+        long[] grams = distinctGrams(query);
+        lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) return NO_MATCHES;
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            Postings shortest = lists[0];
+            int[] matches = new int[shortest.size];
+            int count = 0;
+            candidates:
+            for (int i = 0; i < shortest.size; i++) {
+                int ordinal = shortest.ordinals[i];
+                for (int j = 1; j < lists.length; j++) {
+                    if (!lists[j].contains(ordinal)) continue candidates;
+                }
+                if (matches(rentals.carAt(ordinal), rentals.customerAt(ordinal), query)) matches[count++] = ordinal;
+            }
+            return Arrays.copyOf(matches, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] scan(String query) {
+        int[] matches = new int[rentals.size()];
+        int count = 0;
+        for (int ordinal = 0; ordinal < matches.length; ordinal++) {
+            if (matches(rentals.carAt(ordinal), rentals.customerAt(ordinal), query)) matches[count++] = ordinal;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    static boolean matches(Car car, Customer customer, String lowerCaseQuery) {
+        return containsIgnoreCase(car.getCarId(), lowerCaseQuery)
+            || containsIgnoreCase(car.getBrand(), lowerCaseQuery)
+            || containsIgnoreCase(car.getModel(), lowerCaseQuery)
+            || containsIgnoreCase(customer.getName(), lowerCaseQuery)
+            || containsIgnoreCase(customer.getPhoneNumber(), lowerCaseQuery);
+    }
+
+    private static boolean containsIgnoreCase(String field, String lowerCaseQuery) {
+        int last = field.length() - lowerCaseQuery.length();
+        outer:
+        for (int start = 0; start <= last; start++) {
+            for (int i = 0; i < lowerCaseQuery.length(); i++) {
+                if (Character.toLowerCase(field.charAt(start + i)) != lowerCaseQuery.charAt(i)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static long[] distinctGrams(Rental rental) {
+        Car car = rental.getCar();
+        Customer customer = rental.getCustomer();
+        return distinctGrams(car.getCarId(), car.getBrand(), car.getModel(),
+            customer.getName(), customer.getPhoneNumber());
+    }
+
+    private static long[] distinctGrams(String... fields) {
+        int capacity = 0;
+        for (String field : fields) capacity += Math.max(0, field.length() - GRAM_LENGTH + 1);
+        long[] grams = new long[capacity];
+        int count = 0;
+        for (String field : fields) {
+            for (int start = 0; start + GRAM_LENGTH <= field.length(); start++) {
+                grams[count++] = gram(field, start);
+            }
+        }
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[distinct - 1] != grams[i]) grams[distinct++] = grams[i];
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    // Packs three lower-cased chars into one key
+    private static long gram(String text, int start) {
+        long key = 0;
+        for (int i = 0; i < GRAM_LENGTH; i++) {
+            key = (key << 16) | Character.toLowerCase(text.charAt(start + i));
+        }
+        return key;
+    }
+}
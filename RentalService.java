@@ -0,0 +1,1481 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Headless booking core. The Swing frames and the console menu are thin
+// clients over this class; it never shows a dialog or prints anything, so it
+// can be driven from tests, load generators or other front ends.
+//
+// Invalid input is reported with IllegalArgumentException and conflicting
+// state (car already rented, not rented, duplicate ID) with
+// IllegalStateException. Messages are meant to be shown to the user as is.
+//
+// When opened over a RentalJournal every change is appended to it before it
+// becomes visible to other callers, and the call returns only once the record
+// is durable. Records therefore reach the journal in the same order the
+// changes were applied, and replaying it rebuilds the same state. Every
+// CHECKPOINT_INTERVAL records a background thread folds the sealed journal
+// segments into a new snapshot, so a cold start reads one snapshot and a
+// short journal tail no matter how long the history is.
+//
+// Opened services also keep a RentalArchive in the data directory. After
+// replay and after each checkpoint, rentals returned more than the archive
+// age ago move out of the heap into it; queries read them from there.
+//
+// Every open rental has a timer at its due time in a TimingWheel, cancelled
+// when the car comes back. Opened services advance the wheel once a minute on
+// a background thread; rentals whose timer fires are marked overdue, hold
+// their car in the calendar until it comes back, and are reported to the
+// overdue listeners, without ever scanning the open rentals. Open reservations
+// likewise have a timer at their end date, and those never started by then
+// are dropped as if cancelled.
+class RentalService {
+    // Longest rental or reservation taken, in days. The calendar keeps a bit per
+    // booked day and quotes from today stay inside PricingEngine's tables; history
+    // already in the journal replays whatever its length.
+    static final int MAX_RENTAL_DAYS = 366;
+    private static final long CHECKPOINT_INTERVAL = 250_000;
+    private static final String ARCHIVE_FILE = "archive.dat";
+    private static final Duration DEFAULT_ARCHIVE_AGE = Duration.ofDays(90);
+    private static final long OVERDUE_TICK_MILLIS = 60_000;
+    private static final Logger LOG = Logger.getLogger(RentalService.class.getName());
+    private static final int RETURN_LOCK_STRIPES = 64;
+
+    private final Map<String, Car> carsById = new ConcurrentHashMap<>();
+    private final List<Car> cars = new ArrayList<>();
+    // Cars that left the fleet; they stay claimed so nothing can book them
+    private final Set<Car> retiredCars = ConcurrentHashMap.newKeySet();
+    // Held from the journal append of a return to the rental closing, so two returns of
+    // one car cannot both log it; striped by car
+    private final ReentrantLock[] returnLocks = new ReentrantLock[RETURN_LOCK_STRIPES];
+    private final CustomerRegistry customers = new CustomerRegistry();
+    private final RentalRepository rentals = new RentalRepository();
+    private final RentalStatisticsAggregator statistics = new RentalStatisticsAggregator();
+    private final RentalSearchIndex searchIndex = new RentalSearchIndex(rentals);
+    private final RentalTimeIndex timeIndex = new RentalTimeIndex(rentals);
+    private final PricingEngine pricing = new PricingEngine();
+    private final ReservationCalendar calendar = new ReservationCalendar();
+    private final FleetIndex fleet = new FleetIndex();
+    private final ReportEngine reports = new ReportEngine(rentals);
+    private final Map<String, Reservation> reservationsById = new ConcurrentHashMap<>();
+    private final AtomicInteger reservationSequence = new AtomicInteger();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile RentalJournal journal;
+    private Path dataDirectory;
+    private final Object checkpointLock = new Object();
+    // Held shared by every change from its journal append until it is applied, and
+    // exclusively by checkpoint while it seals the journal and notes the state, so a
+    // snapshot streamed from the live stores matches the sealed segments exactly.
+    // Always taken before the cars lock and the return locks.
+    private final ReentrantReadWriteLock checkpointCut = new ReentrantReadWriteLock();
+    private final AtomicLong recordsSinceCheckpoint = new AtomicLong();
+    private final AtomicBoolean checkpointRunning = new AtomicBoolean();
+    private RentalArchive archive;
+    private volatile Duration archiveAge = DEFAULT_ARCHIVE_AGE;
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Operation rentCarMetrics = metrics.operation("rent_car");
+    private final Metrics.Operation returnCarMetrics = metrics.operation("return_car");
+    private final Metrics.Operation reserveCarMetrics = metrics.operation("reserve_car");
+    private final Metrics.Operation rentGroupMetrics = metrics.operation("rent_group");
+    private final Metrics.Operation returnGroupMetrics = metrics.operation("return_group");
+    private final Metrics.Operation findRentalsMetrics = metrics.operation("find_rentals");
+    private final Metrics.Operation statisticsMetrics = metrics.operation("statistics");
+    // Bumped after a car is retired or reinstated, which changes availability without
+    // touching the calendar
+    private final AtomicLong retirements = new AtomicLong();
+    private final LruCache<List<LocalDate>, List<Car>> availabilityCache = new LruCache<>(
+        "availability_cache", 1_000, Duration.ofSeconds(30), () -> calendar.version() + retirements.get(), metrics);
+    private final TimingWheel<Rental> dueTimes = new TimingWheel<>(OVERDUE_TICK_MILLIS, System.currentTimeMillis());
+    private final Set<Rental> overdueRentals = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<Rental>> overdueListeners = new CopyOnWriteArrayList<>();
+    private final Metrics.Counter overdueEvents = metrics.counter("rentals_overdue", "Rentals that went past their due time unreturned.");
+    private final TimingWheel<Reservation> reservationEnds = new TimingWheel<>(OVERDUE_TICK_MILLIS, System.currentTimeMillis());
+    private final Metrics.Counter expiredReservations = metrics.counter("reservations_expired",
+        "Reservations that reached their end date without being started.");
+    private volatile Thread overdueChecker;
+    private final Metrics.Counter checkpointFailures = metrics.counter("checkpoint_failures",
+        "Background checkpoints that failed; the journal keeps every change until one succeeds.");
+    private final Metrics.Counter listenerFailures = metrics.counter("listener_failures",
+        "Change listener calls that threw; the change itself was committed.");
+    private final Metrics.Counter overdueCheckFailures = metrics.counter("overdue_check_failures",
+        "Rounds of the overdue and reservation expiry checks that failed.");
+
+    // Set while a batch runs on the current thread, so listeners fire and the
+    // journal is waited on once at the end
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+    private static class Batch {
+        boolean changed;
+        long journalSequence;
+    }
+
+    RentalService() {
+        for (int i = 0; i < returnLocks.length; i++) returnLocks[i] = new ReentrantLock();
+        metrics.gauge("active_rentals", "Rentals not yet returned.", () -> statistics.snapshot().getActiveRentals());
+        metrics.gauge("rentals", "Rentals in the history, archived ones included.", rentals::size);
+        metrics.gauge("archived_rentals", "Rentals moved to the off-heap archive.", rentals::archivedCount);
+        metrics.gauge("fleet_size", "Cars in the fleet.", this::fleetSize);
+        metrics.gauge("fleet_utilization", "Share of the fleet currently rented, from 0 to 1.", () -> {
+            int fleetSize = fleetSize();
+            return fleetSize == 0 ? 0 : (double) statistics.snapshot().getActiveRentals() / fleetSize;
+        });
+        metrics.gauge("customers", "Known customers.", customers::size);
+        metrics.gauge("open_reservations", "Reservations not yet started or cancelled.", reservationsById::size);
+        metrics.gauge("overdue_rentals", "Open rentals past their due time.", overdueRentals::size);
+    }
+
+    private int fleetSize() {
+        return carsById.size() - retiredCars.size();
+    }
+
+    // Loads the latest snapshot in the directory, replays the journal segments written
+    // after it, then logs every new change to the journal
+    public static RentalService open(Path dataDirectory) throws IOException {
+        Files.createDirectories(dataDirectory);
+        RentalService service = new RentalService();
+        List<Long> snapshots = RentalSnapshot.snapshots(dataDirectory);
+        long firstSegment = 1;
+        if (!snapshots.isEmpty()) {
+            firstSegment = snapshots.get(snapshots.size() - 1);
+            RentalSnapshot.read(RentalSnapshot.path(dataDirectory, firstSegment), service.new Replayer());
+        }
+        RentalJournal journal = new RentalJournal(dataDirectory, firstSegment, RentalJournal.SyncMode.GROUP_COMMIT);
+        journal.replay(firstSegment, service.new Replayer());
+        service.bookActiveRentals();
+        service.dataDirectory = dataDirectory;
+        service.archive = new RentalArchive(dataDirectory.resolve(ARCHIVE_FILE));
+        service.archiveOldRentals();
+        service.journal = journal;
+        deleteObsoleteFiles(dataDirectory, firstSegment);
+        service.startOverdueChecks();
+        return service;
+    }
+
+    public void close() throws IOException {
+        Thread checker = overdueChecker;
+        if (checker != null) checker.interrupt();
+        RentalJournal current = journal;
+        if (current == null) return;
+        synchronized (checkpointLock) {
+            current.close();
+            archive.close();
+        }
+    }
+
+    // How long after its return a rental stays on the heap before archiveOldRentals moves it
+    public void setArchiveAge(Duration age) {
+        if (age.isNegative()) {
+            throw new IllegalArgumentException("The archive age cannot be negative.");
+        }
+        archiveAge = age;
+    }
+
+    // Moves rentals returned longer ago than the archive age into the off-heap archive.
+    // They stay visible to every query. Returns the number of rentals moved.
+    public int archiveOldRentals() throws IOException {
+        if (archive == null) {
+            throw new IllegalStateException("This service has no data directory to archive into.");
+        }
+        return rentals.archive(archive, LocalDateTime.now().minus(archiveAge));
+    }
+
+    public int getArchivedRentalCount() {
+        return rentals.archivedCount();
+    }
+
+    // Seals the current journal segment and writes a snapshot covering it, then deletes
+    // the segments and the older snapshot it replaces. Changes wait only while the segment
+    // is sealed and the state at that point is noted; the snapshot is then streamed from
+    // the live stores, returned rentals straight from the columns and the archive, so it
+    // costs no second copy of the history and bookings carry on while it is written.
+    public void checkpoint() throws IOException {
+        RentalJournal current = journal;
+        if (current == null) {
+            throw new IllegalStateException("This service has no journal to checkpoint.");
+        }
+        synchronized (checkpointLock) {
+            recordsSinceCheckpoint.set(0);
+            long sealed;
+            List<Car> fleetAtCut;
+            List<Car> retiredAtCut;
+            List<Rental> historyAtCut;
+            List<Reservation> reservationsAtCut;
+            checkpointCut.writeLock().lock();
+            try {
+                sealed = current.rotate();
+                fleetAtCut = allCars();
+                retiredAtCut = getRetiredCars();
+                historyAtCut = rentals.historyAt(rentals.size(), rentals.openByOrdinal());
+                reservationsAtCut = getReservations();
+            } finally {
+                checkpointCut.writeLock().unlock();
+            }
+            RentalSnapshot.write(dataDirectory, sealed + 1, fleetAtCut, historyAtCut, reservationsAtCut, retiredAtCut);
+            deleteObsoleteFiles(dataDirectory, sealed + 1);
+        }
+    }
+
+    private void checkpointInBackground() {
+        if (!checkpointRunning.compareAndSet(false, true)) return;
+        Thread worker = new Thread(() -> {
+            try {
+                checkpoint();
+                archiveOldRentals();
+            } catch (IOException | RuntimeException e) {
+                checkpointFailures.increment();
+                LOG.log(Level.WARNING, "Background checkpoint failed", e);
+            } finally {
+                checkpointRunning.set(false);
+            }
+        }, "rental-checkpoint");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Segments and snapshots older than the given snapshot, and unfinished snapshot files
+    private static void deleteObsoleteFiles(Path dataDirectory, long snapshotSegment) throws IOException {
+        for (long segment : RentalJournal.segments(dataDirectory)) {
+            if (segment < snapshotSegment) Files.deleteIfExists(RentalJournal.segmentPath(dataDirectory, segment));
+        }
+        for (long segment : RentalSnapshot.snapshots(dataDirectory)) {
+            if (segment < snapshotSegment) Files.deleteIfExists(RentalSnapshot.path(dataDirectory, segment));
+        }
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dataDirectory, "snapshot-*.tmp")) {
+            for (Path leftover : leftovers) Files.deleteIfExists(leftover);
+        }
+    }
+
+    // A retired car added again comes back with the details it was first added with
+    public Car addCar(String carId, String brand, String model, double basePricePerDay) {
+        Car car = newCar(carId, brand, model, basePricePerDay);
+        long sequence;
+        checkpointCut.readLock().lock();
+        try {
+            synchronized (cars) {
+                Car existing = carsById.get(car.getCarId());
+                if (existing != null && !retiredCars.contains(existing)) {
+                    throw new IllegalStateException("A car with ID " + car.getCarId() + " already exists.");
+                }
+                if (existing != null) car = existing;
+                RentalJournal current = journal;
+                sequence = current == null ? 0 : current.logCarAdded(car);
+                if (existing != null) {
+                    reinstateCar(existing);
+                } else {
+                    registerCar(car);
+                }
+            }
+        } finally {
+            checkpointCut.readLock().unlock();
+        }
+        committed(sequence);
+        return car;
+    }
+
+    // Takes the car out of this fleet, as when it moves to another branch. It must not be
+    // rented or booked from today on. Its rentals stay in the history, and adding a car
+    // with the same ID brings it back.
+    public Car retireCar(String carId) {
+        Car car = requireCar(carId);
+        long sequence;
+        checkpointCut.readLock().lock();
+        try {
+            synchronized (cars) {
+                if (!claimCar(car)) {
+                    throw new IllegalStateException("Car " + carId + " is rented.");
+                }
+                // Marked before the calendar is checked, so a reservation racing with this either
+                // sees the mark or shows up in the calendar
+                retiredCars.add(car);
+                retirements.incrementAndGet();
+                if (calendar.isBookedFrom(car, LocalDate.now())) {
+                    retiredCars.remove(car);
+                    retirements.incrementAndGet();
+                    releaseCar(car);
+                    throw new IllegalStateException("Car " + carId + " has open reservations.");
+                }
+                try {
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logCarRetired(car);
+                } catch (RuntimeException e) {
+                    retiredCars.remove(car);
+                    retirements.incrementAndGet();
+                    releaseCar(car);
+                    throw e;
+                }
+            }
+        } finally {
+            checkpointCut.readLock().unlock();
+        }
+        committed(sequence);
+        return car;
+    }
+
+    public Rental rentCar(String carId, String customerName, String phoneNumber, int days) {
+        long started = System.nanoTime();
+        try {
+            if (isBlank(customerName)) {
+                throw new IllegalArgumentException("Please enter the customer name.");
+            }
+            checkDays(days);
+            Car car = requireCar(carId);
+            if (!claimCar(car)) {
+                throw new IllegalStateException("Car " + carId + " is not available.");
+            }
+            LocalDateTime now = LocalDateTime.now();
+            LocalDate today = now.toLocalDate();
+            // Booked under a placeholder until the rental exists, so a rental the calendar refuses
+            // registers no customer; one the journal refuses undoes its registration
+            Object placeholder = new Object();
+            if (!calendar.claim(car, today, today.plusDays(days), placeholder)) {
+                releaseCar(car);
+                throw new IllegalStateException("Car " + carId + " is reserved within the next " + days + " days.");
+            }
+            CustomerRegistry.Registration customer = newCustomer(customerName, phoneNumber);
+            Rental rental = new Rental(car, customer.getCustomer(), days, now, pricing.quote(car, today, days));
+            calendar.rebind(car, today, placeholder, rental);
+            long sequence;
+            checkpointCut.readLock().lock();
+            try {
+                try {
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logRented(rental);
+                } catch (RuntimeException e) {
+                    calendar.release(car, today, rental);
+                    releaseCar(car);
+                    customer.undo();
+                    throw e;
+                }
+                recordRental(rental);
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            committed(sequence);
+            return rental;
+        } catch (RuntimeException e) {
+            rentCarMetrics.failed();
+            throw e;
+        } finally {
+            rentCarMetrics.record(started);
+        }
+    }
+
+    public Rental returnCar(String carId) {
+        long started = System.nanoTime();
+        try {
+            Car car = requireCar(carId);
+            Rental rental;
+            long sequence;
+            checkpointCut.readLock().lock();
+            try {
+                ReentrantLock lock = returnLock(car);
+                lock.lock();
+                try {
+                    rental = rentals.findActive(car);
+                    if (rental == null) {
+                        throw new IllegalStateException("Car " + carId + " is not rented.");
+                    }
+                    // Journaled first: if the append fails, nothing has changed
+                    LocalDateTime now = LocalDateTime.now();
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logReturned(rental, now);
+                    closeRental(car, now);
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            releaseCar(car);
+            committed(sequence);
+            return rental;
+        } catch (RuntimeException e) {
+            returnCarMetrics.failed();
+            throw e;
+        } finally {
+            returnCarMetrics.record(started);
+        }
+    }
+
+    // Holds the car for [start, end) unless it is already reserved or rented for any of those days
+    public Reservation reserveCar(String carId, String customerName, String phoneNumber, LocalDate start, LocalDate end) {
+        long started = System.nanoTime();
+        try {
+            if (isBlank(customerName)) {
+                throw new IllegalArgumentException("Please enter the customer name.");
+            }
+            if (start == null || end == null || !start.isBefore(end)) {
+                throw new IllegalArgumentException("The end date must be after the start date.");
+            }
+            if (start.isBefore(LocalDate.now())) {
+                throw new IllegalArgumentException("Reservations cannot start in the past.");
+            }
+            if (ChronoUnit.DAYS.between(start, end) > MAX_RENTAL_DAYS) {
+                throw new IllegalArgumentException("A booking can last at most " + MAX_RENTAL_DAYS + " days.");
+            }
+            Car car = requireCar(carId);
+            // Booked under a placeholder until the reservation exists, so one the calendar refuses
+            // registers no customer; one the journal refuses undoes its registration
+            Object placeholder = new Object();
+            if (!calendar.claim(car, start, end, placeholder)) {
+                throw new IllegalStateException("Car " + carId + " is already booked between " + start + " and " + end.minusDays(1) + ".");
+            }
+            if (retiredCars.contains(car)) {
+                calendar.release(car, start, placeholder);
+                throw new IllegalArgumentException("No car with ID " + carId + ".");
+            }
+            CustomerRegistry.Registration customer = newCustomer(customerName, phoneNumber);
+            Reservation reservation = new Reservation("RES" + reservationSequence.incrementAndGet(), car,
+                customer.getCustomer(), start, end,
+                pricing.quote(car, start, (int) ChronoUnit.DAYS.between(start, end)));
+            calendar.rebind(car, start, placeholder, reservation);
+            long sequence;
+            checkpointCut.readLock().lock();
+            try {
+                try {
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logReserved(reservation);
+                } catch (RuntimeException e) {
+                    calendar.release(car, start, reservation);
+                    customer.undo();
+                    throw e;
+                }
+                openReservation(reservation);
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            committed(sequence);
+            return reservation;
+        } catch (RuntimeException e) {
+            reserveCarMetrics.failed();
+            throw e;
+        } finally {
+            reserveCarMetrics.record(started);
+        }
+    }
+
+    public Reservation cancelReservation(String reservationId) {
+        Reservation reservation;
+        long sequence;
+        checkpointCut.readLock().lock();
+        try {
+            reservation = removeReservation(reservationId);
+            // Journaled before the days are freed, so a reservation taking them is logged after the cancel
+            try {
+                RentalJournal current = journal;
+                sequence = current == null ? 0 : current.logReservationCancelled(reservation);
+            } catch (RuntimeException e) {
+                openReservation(reservation);
+                throw e;
+            }
+            reservationEnds.cancel(reservation);
+            calendar.release(reservation.getCar(), reservation.getStartDate(), reservation);
+        } finally {
+            checkpointCut.readLock().unlock();
+        }
+        committed(sequence);
+        return reservation;
+    }
+
+    // Turns the reservation into a rental at its reserved price, running from today to its end date
+    public Rental startReservation(String reservationId) {
+        Rental rental;
+        long sequence;
+        checkpointCut.readLock().lock();
+        try {
+            Reservation reservation = removeReservation(reservationId);
+            LocalDateTime now = LocalDateTime.now();
+            LocalDate today = now.toLocalDate();
+            Car car = reservation.getCar();
+            try {
+                if (today.isBefore(reservation.getStartDate())) {
+                    throw new IllegalStateException("Reservation " + reservationId + " starts on " + reservation.getStartDate() + ".");
+                }
+                if (!today.isBefore(reservation.getEndDate())) {
+                    throw new IllegalStateException("Reservation " + reservationId + " ended on " + reservation.getEndDate().minusDays(1) + ".");
+                }
+                if (!claimCar(car)) {
+                    throw new IllegalStateException("Car " + car.getCarId() + " has not been returned yet.");
+                }
+            } catch (IllegalStateException e) {
+                openReservation(reservation);
+                throw e;
+            }
+            rental = rentalFor(reservation, now);
+            if (!calendar.replace(car, reservation.getStartDate(), reservation, today, reservation.getEndDate(), rental)) {
+                releaseCar(car);
+                openReservation(reservation);
+                throw new IllegalStateException("Car " + car.getCarId() + " is booked by someone else for those days.");
+            }
+            try {
+                RentalJournal current = journal;
+                sequence = current == null ? 0 : current.logReservationStarted(reservation, rental);
+            } catch (RuntimeException e) {
+                calendar.replace(car, today, rental, reservation.getStartDate(), reservation.getEndDate(), reservation);
+                releaseCar(car);
+                openReservation(reservation);
+                throw e;
+            }
+            reservationEnds.cancel(reservation);
+            recordRental(rental);
+        } finally {
+            checkpointCut.readLock().unlock();
+        }
+        committed(sequence);
+        return rental;
+    }
+
+    // Each car is checked and journaled on its own, but the fleet indexes are updated once
+    // for all of them and the journal is waited on once at the end. As with addCar, a
+    // retired car's ID brings that car back with the details it was first added with.
+    public BatchResult<Car> addCars(Collection<Car> newCars) {
+        BatchResult<Car> result = new BatchResult<>();
+        List<Car> added = new ArrayList<>(newCars.size());
+        int reinstated = 0;
+        long sequence = 0;
+        checkpointCut.readLock().lock();
+        try {
+            synchronized (cars) {
+                Set<String> batchIds = new HashSet<>();
+                try {
+                    for (Car candidate : newCars) {
+                        try {
+                            Car car = newCar(candidate.getCarId(), candidate.getBrand(), candidate.getModel(),
+                                candidate.getBasePricePerDay());
+                            Car existing = carsById.get(car.getCarId());
+                            if (existing != null && !retiredCars.contains(existing) || !batchIds.add(car.getCarId())) {
+                                throw new IllegalStateException("A car with ID " + car.getCarId() + " already exists.");
+                            }
+                            if (existing != null) car = existing;
+                            RentalJournal current = journal;
+                            sequence = current == null ? 0 : current.logCarAdded(car);
+                            if (existing != null) {
+                                reinstateCar(existing);
+                                reinstated++;
+                            } else {
+                                added.add(car);
+                            }
+                            result.addSuccess(car);
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            result.addFailure(candidate.getCarId(), e.getMessage());
+                        }
+                    }
+                } finally {
+                    registerCars(added);
+                }
+            }
+        } finally {
+            checkpointCut.readLock().unlock();
+        }
+        if (!added.isEmpty() || reinstated > 0) committed(sequence, added.size() + reinstated);
+        return result;
+    }
+
+    // Records rentals made elsewhere, such as history migrated from another system, at
+    // their own dates and prices. Returned ones go straight into the history; open ones
+    // rent the car and book it from the rental date. Each is journaled on its own and
+    // failures do not undo the others; the search index is updated once at the end.
+    public BatchResult<Rental> importRentals(Collection<RentalRecord> records) {
+        BatchResult<Rental> result = new BatchResult<>();
+        List<Rental> imported = new ArrayList<>(records.size());
+        int[] ordinals = new int[records.size()];
+        batch(() -> {
+            try {
+                for (RentalRecord record : records) {
+                    try {
+                        Rental rental = importRental(record, ordinals, imported.size());
+                        imported.add(rental);
+                        result.addSuccess(rental);
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        result.addFailure(record.getCarId(), e.getMessage());
+                    }
+                }
+            } finally {
+                searchIndex.addAll(Arrays.copyOf(ordinals, imported.size()), imported);
+            }
+        });
+        return result;
+    }
+
+    // Each request is booked independently; failures do not undo the others
+    public BatchResult<Rental> rentCars(Collection<RentRequest> requests) {
+        BatchResult<Rental> result = new BatchResult<>();
+        batch(() -> {
+            for (RentRequest request : requests) {
+                try {
+                    result.addSuccess(rentCar(request.getCarId(), request.getCustomerName(),
+                        request.getPhoneNumber(), request.getDays()));
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    result.addFailure(request.getCarId(), e.getMessage());
+                }
+            }
+        });
+        return result;
+    }
+
+    public BatchResult<Rental> returnCars(Collection<String> carIds) {
+        BatchResult<Rental> result = new BatchResult<>();
+        batch(() -> {
+            for (String carId : carIds) {
+                try {
+                    result.addSuccess(returnCar(carId));
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    result.addFailure(carId, e.getMessage());
+                }
+            }
+        });
+        return result;
+    }
+
+    // Books every request or none of them: if any car is unknown, taken or reserved, every
+    // car claimed so far is released and the exception names the car that failed. The group
+    // is journaled as one record, and the search index and listeners are updated once for it.
+    public List<Rental> rentGroup(Collection<RentRequest> requests) {
+        long started = System.nanoTime();
+        try {
+            List<RentRequest> ordered = new ArrayList<>(requests);
+            List<Car> groupCars = new ArrayList<>(ordered.size());
+            Set<Car> listed = new HashSet<>();
+            for (RentRequest request : ordered) {
+                if (isBlank(request.getCustomerName())) {
+                    throw new IllegalArgumentException("Please enter the customer name.");
+                }
+                checkDays(request.getDays());
+                Car car = requireCar(request.getCarId());
+                if (!listed.add(car)) {
+                    throw new IllegalArgumentException("Car " + car.getCarId() + " is listed more than once.");
+                }
+                groupCars.add(car);
+            }
+            if (ordered.isEmpty()) return new ArrayList<>();
+
+            LocalDateTime now = LocalDateTime.now();
+            LocalDate today = now.toLocalDate();
+            List<Rental> group = new ArrayList<>(ordered.size());
+            Object[] bookings = new Object[ordered.size()];
+            List<CustomerRegistry.Registration> registrations = new ArrayList<>(ordered.size());
+            int claimed = 0;
+            long sequence;
+            int[] ordinals = new int[ordered.size()];
+            checkpointCut.readLock().lock();
+            try {
+                try {
+                    for (int i = 0; i < ordered.size(); i++) {
+                        Car car = groupCars.get(i);
+                        if (!claimCar(car)) {
+                            throw new IllegalStateException("Car " + car.getCarId() + " is not available.");
+                        }
+                        claimed++;
+                        int days = ordered.get(i).getDays();
+                        Object placeholder = new Object();
+                        if (!calendar.claim(car, today, today.plusDays(days), placeholder)) {
+                            throw new IllegalStateException("Car " + car.getCarId() + " is reserved within the next " + days + " days.");
+                        }
+                        bookings[i] = placeholder;
+                    }
+                    // Customers are registered only once every car is held, and undone if the journal
+                    // refuses the group, so a refused group leaves none behind
+                    for (int i = 0; i < ordered.size(); i++) {
+                        RentRequest request = ordered.get(i);
+                        Car car = groupCars.get(i);
+                        CustomerRegistry.Registration customer = newCustomer(request.getCustomerName(), request.getPhoneNumber());
+                        registrations.add(customer);
+                        Rental rental = new Rental(car, customer.getCustomer(),
+                            request.getDays(), now, pricing.quote(car, today, request.getDays()));
+                        calendar.rebind(car, today, bookings[i], rental);
+                        bookings[i] = rental;
+                        group.add(rental);
+                    }
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logGroupRented(group);
+                } catch (RuntimeException e) {
+                    for (int i = 0; i < claimed; i++) {
+                        if (bookings[i] != null) calendar.release(groupCars.get(i), today, bookings[i]);
+                        releaseCar(groupCars.get(i));
+                    }
+                    // Latest first, as requests for one customer build on each other
+                    for (int i = registrations.size() - 1; i >= 0; i--) registrations.get(i).undo();
+                    throw e;
+                }
+                for (int i = 0; i < group.size(); i++) ordinals[i] = storeRental(group.get(i));
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            searchIndex.addAll(ordinals, group);
+            committed(sequence, group.size());
+            return group;
+        } catch (RuntimeException e) {
+            rentGroupMetrics.failed();
+            throw e;
+        } finally {
+            rentGroupMetrics.record(started);
+        }
+    }
+
+    // Returns every car or, if any of them is unknown or not rented, none. A car returned by
+    // another caller while the group is being returned is left out of the result.
+    public List<Rental> returnGroup(Collection<String> carIds) {
+        long started = System.nanoTime();
+        try {
+            List<Car> groupCars = new ArrayList<>(carIds.size());
+            Set<Car> listed = new HashSet<>();
+            boolean[] stripes = new boolean[returnLocks.length];
+            for (String carId : carIds) {
+                Car car = requireCar(carId);
+                if (!listed.add(car)) {
+                    throw new IllegalArgumentException("Car " + car.getCarId() + " is listed more than once.");
+                }
+                groupCars.add(car);
+                stripes[returnStripe(car)] = true;
+            }
+            List<Rental> group = new ArrayList<>(groupCars.size());
+            if (groupCars.isEmpty()) return group;
+            long sequence;
+            checkpointCut.readLock().lock();
+            try {
+                // Stripes are taken in index order, so two groups cannot deadlock
+                int locked = 0;
+                try {
+                    for (; locked < stripes.length; locked++) {
+                        if (stripes[locked]) returnLocks[locked].lock();
+                    }
+                    for (Car car : groupCars) {
+                        Rental rental = rentals.findActive(car);
+                        if (rental == null) {
+                            throw new IllegalStateException("Car " + car.getCarId() + " is not rented.");
+                        }
+                        group.add(rental);
+                    }
+                    LocalDateTime now = LocalDateTime.now();
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logGroupReturned(group, now);
+                    for (Car car : groupCars) closeRental(car, now);
+                } finally {
+                    while (--locked >= 0) {
+                        if (stripes[locked]) returnLocks[locked].unlock();
+                    }
+                }
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            for (Rental rental : group) releaseCar(rental.getCar());
+            committed(sequence, group.size());
+            return group;
+        } catch (RuntimeException e) {
+            returnGroupMetrics.failed();
+            throw e;
+        } finally {
+            returnGroupMetrics.record(started);
+        }
+    }
+
+    // Runs several operations and notifies change listeners once, after all of them
+    public void batch(Runnable operations) {
+        if (currentBatch.get() != null) {
+            operations.run();
+            return;
+        }
+        Batch batch = new Batch();
+        currentBatch.set(batch);
+        try {
+            operations.run();
+        } finally {
+            currentBatch.remove();
+            awaitDurable(batch.journalSequence);
+            if (batch.changed) notifyListeners();
+        }
+    }
+
+    // Price of renting the car for the given days starting today, as rentCar would charge it now
+    public double quote(String carId, int days) {
+        return quote(carId, LocalDate.now(), days);
+    }
+
+    // Computed afresh each time: a quote is a few table reads, cheaper than any cache lookup
+    public double quote(String carId, LocalDate start, int days) {
+        if (start == null) {
+            throw new IllegalArgumentException("The start date is required.");
+        }
+        checkDays(days);
+        return pricing.quote(requireCar(carId), start, days);
+    }
+
+    // Prices for every car over the same dates, in the order given
+    public double[] quote(List<Car> cars, LocalDate start, int days) {
+        if (start == null) {
+            throw new IllegalArgumentException("The start date is required.");
+        }
+        checkDays(days);
+        return pricing.quote(cars, start, days);
+    }
+
+    // Applies to bookings made from now on; recorded rentals keep the price they were booked at
+    public void setPricingRules(PricingRules rules) {
+        pricing.setRules(rules);
+    }
+
+    public Reservation findReservation(String reservationId) {
+        return reservationId == null ? null : reservationsById.get(reservationId.trim());
+    }
+
+    // Open reservations, earliest start first
+    public List<Reservation> getReservations() {
+        List<Reservation> reservations = new ArrayList<>(reservationsById.values());
+        reservations.sort(Comparator.comparing(Reservation::getStartDate).thenComparing(Reservation::getReservationId));
+        return reservations;
+    }
+
+    // Cars neither reserved nor rented on any day in [start, end), from the availability calendar.
+    // A car kept past its due date counts as rented on every day until it is returned.
+    // The list is read-only: it is shared through the availability cache until the next booking.
+    public List<Car> findFreeCars(LocalDate start, LocalDate end) {
+        if (start == null || end == null || !start.isBefore(end)) {
+            throw new IllegalArgumentException("The end date must be after the start date.");
+        }
+        return availabilityCache.get(List.of(start, end), key -> List.copyOf(withoutRetired(calendar.freeCars(start, end))));
+    }
+
+    public Car findCar(String carId) {
+        Car car = carId == null ? null : carsById.get(carId.trim());
+        return car == null || retiredCars.contains(car) ? null : car;
+    }
+
+    public List<Car> getCars() {
+        return withoutRetired(allCars());
+    }
+
+    // Cars retired from this fleet, in the order they were first added
+    public List<Car> getRetiredCars() {
+        List<Car> retired = allCars();
+        retired.retainAll(retiredCars);
+        return retired;
+    }
+
+    public List<Car> getAvailableCars() {
+        return fleet.find(new CarQuery(null, null, true, null, null));
+    }
+
+    // Answered from the fleet's bitmap indexes, in the order the cars were added
+    public List<Car> findCars(CarQuery query) {
+        return withoutRetired(fleet.find(query));
+    }
+
+    // Every car ever added, retired ones included
+    private List<Car> allCars() {
+        synchronized (cars) {
+            return new ArrayList<>(cars);
+        }
+    }
+
+    private List<Car> withoutRetired(List<Car> found) {
+        if (!retiredCars.isEmpty()) found.removeIf(retiredCars::contains);
+        return found;
+    }
+
+    public Rental findActiveRental(String carId) {
+        Car car = findCar(carId);
+        return car == null ? null : rentals.findActive(car);
+    }
+
+    public List<Rental> getRentals() {
+        return rentals.history();
+    }
+
+    // Rentals whose car ID, brand, model, customer name or phone contains the text, ignoring case
+    public List<Rental> searchRentals(String text) {
+        return findRentals(text, null, null);
+    }
+
+    // Rentals matching the search text (may be empty) that started in [from, to).
+    // Either bound may be null for an open range.
+    public List<Rental> findRentals(String text, LocalDateTime from, LocalDateTime to) {
+        int[] ordinals = matchingOrdinals(text, from, to);
+        return ordinals == null ? rentals.history() : rentals.select(ordinals);
+    }
+
+    // As above, keeping only returned (true) or active (false) rentals; null keeps both.
+    // The result is a view: rentals are looked up only as rows are read.
+    public List<Rental> findRentals(String text, LocalDateTime from, LocalDateTime to, Boolean returned) {
+        long started = System.nanoTime();
+        try {
+            if (returned == null) return findRentals(text, from, to);
+            int[] ordinals = matchingOrdinals(text, from, to);
+            int count = ordinals == null ? rentals.size() : ordinals.length;
+            int[] kept = new int[count];
+            int keptCount = 0;
+            for (int i = 0; i < count; i++) {
+                int ordinal = ordinals == null ? i : ordinals[i];
+                if (rentals.isReturnedAt(ordinal) == returned) kept[keptCount++] = ordinal;
+            }
+            return rentals.select(Arrays.copyOf(kept, keptCount));
+        } catch (RuntimeException e) {
+            findRentalsMetrics.failed();
+            throw e;
+        } finally {
+            findRentalsMetrics.record(started);
+        }
+    }
+
+    // Ascending ordinals matching the text and range, or null when nothing narrows the history
+    private int[] matchingOrdinals(String text, LocalDateTime from, LocalDateTime to) {
+        boolean hasText = text != null && !text.isEmpty();
+        boolean hasRange = from != null || to != null;
+        if (!hasText && !hasRange) return null;
+        if (!hasRange) return searchIndex.search(text);
+        int[] inRange = timeIndex.between(from, to);
+        return hasText ? intersect(searchIndex.search(text), inRange) : inRange;
+    }
+
+    // The customer's rentals, oldest first; a view that builds returned rentals as rows are read
+    public List<Rental> getRentalsByCustomer(String customerId) {
+        return rentals.select(rentals.findByCustomer(customerId));
+    }
+
+    // One page of the customer's rentals, oldest first; copies only that page's ordinals
+    public List<Rental> getRentalsByCustomer(String customerId, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit cannot be negative.");
+        }
+        return rentals.select(rentals.findByCustomer(customerId, offset, limit));
+    }
+
+    public int getRentalCountByCustomer(String customerId) {
+        return rentals.countByCustomer(customerId);
+    }
+
+    public Customer findCustomer(String customerId) {
+        return customers.findById(customerId);
+    }
+
+    public Customer findCustomerByPhone(String phoneNumber) {
+        return customers.findByPhone(phoneNumber);
+    }
+
+    public Collection<Customer> getCustomers() {
+        return customers.all();
+    }
+
+    // Revenue, utilization, rental length and top customers over the whole history. Built on
+    // the report engine's own threads from lock-free reads, so bookings never wait for it.
+    public CompletableFuture<RentalReport> generateReport() {
+        return reports.generate(allCars(), LocalDateTime.now());
+    }
+
+    // O(1): read from running totals, not from the history
+    public RentalStatistics getStatistics() {
+        long started = System.nanoTime();
+        try {
+            return statistics.snapshot();
+        } finally {
+            statisticsMetrics.record(started);
+        }
+    }
+
+    // Latencies of the booking calls above, plus fleet and rental gauges
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // Per-brand and per-day breakdowns of the same totals
+    public RentalStatisticsAggregator getStatisticsBreakdown() {
+        return statistics;
+    }
+
+    // Listeners run on the thread that made the change
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    // Called once for each rental that goes overdue, on the thread running checkOverdue
+    public void addOverdueListener(Consumer<Rental> listener) {
+        overdueListeners.add(listener);
+    }
+
+    // Moves the due-time wheel to now, marks the open rentals whose due time has passed as
+    // overdue and tells the overdue listeners; returns how many went overdue. Opened services
+    // call this every minute themselves.
+    public int checkOverdue() {
+        int count = 0;
+        for (Rental rental : dueTimes.advance(System.currentTimeMillis())) {
+            if (rental.isReturned()) continue;
+            overdueRentals.add(rental);
+            // Booked on from the due day until the car comes back, so it never shows as free
+            calendar.holdFrom(rental.getCar(), rental.getDueDate().toLocalDate(), rental);
+            // Checked again in case the car came back in between; closeRental marks it first
+            if (rental.isReturned()) {
+                calendar.releaseHold(rental.getCar(), rental);
+                overdueRentals.remove(rental);
+                continue;
+            }
+            count++;
+            overdueEvents.increment();
+            for (Consumer<Rental> listener : overdueListeners) {
+                listener.accept(rental);
+            }
+        }
+        return count;
+    }
+
+    // Drops the open reservations whose end date has come without them being started,
+    // journaled as cancellations, and frees their days; returns how many were dropped.
+    // Opened services call this every minute themselves.
+    public int expireReservations() {
+        int count = 0;
+        RuntimeException failure = null;
+        for (Reservation reservation : reservationEnds.advance(System.currentTimeMillis())) {
+            long sequence;
+            checkpointCut.readLock().lock();
+            try {
+                // Started or cancelled in the meantime
+                if (!reservationsById.remove(reservation.getReservationId(), reservation)) continue;
+                try {
+                    RentalJournal current = journal;
+                    sequence = current == null ? 0 : current.logReservationCancelled(reservation);
+                } catch (RuntimeException e) {
+                    // Kept open and tried again at the next check
+                    openReservation(reservation);
+                    if (failure == null) failure = e;
+                    continue;
+                }
+                calendar.release(reservation.getCar(), reservation.getStartDate(), reservation);
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            count++;
+            expiredReservations.increment();
+            committed(sequence);
+        }
+        if (failure != null) throw failure;
+        return count;
+    }
+
+    public boolean isOverdue(Rental rental) {
+        return overdueRentals.contains(rental);
+    }
+
+    // Open rentals past their due time, longest overdue first
+    public List<Rental> getOverdueRentals() {
+        List<Rental> overdue = new ArrayList<>(overdueRentals);
+        overdue.sort(Comparator.comparing(Rental::getDueDate));
+        return overdue;
+    }
+
+    private void startOverdueChecks() {
+        Thread checker = new Thread(() -> {
+            while (true) {
+                try {
+                    checkOverdue();
+                    expireReservations();
+                } catch (RuntimeException e) {
+                    overdueCheckFailures.increment();
+                    LOG.log(Level.WARNING, "Overdue check failed", e);
+                }
+                try {
+                    // Wakes just after the next tick boundary, when the next timers fall due
+                    Thread.sleep(OVERDUE_TICK_MILLIS - Math.floorMod(System.currentTimeMillis(), OVERDUE_TICK_MILLIS) + 1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "overdue-checker");
+        checker.setDaemon(true);
+        overdueChecker = checker;
+        checker.start();
+    }
+
+    private Car requireCar(String carId) {
+        Car car = findCar(carId);
+        if (car == null) {
+            throw new IllegalArgumentException("No car with ID " + carId + ".");
+        }
+        return car;
+    }
+
+    private void registerCar(Car car) {
+        registerCars(List.of(car));
+    }
+
+    // Called with the cars lock held
+    private void registerCars(List<Car> added) {
+        for (Car car : added) {
+            carsById.put(car.getCarId(), car);
+            pricing.carAdded(car);
+        }
+        cars.addAll(added);
+        calendar.carsAdded(added);
+        fleet.carsAdded(added);
+    }
+
+    // Called with the cars lock held
+    private void reinstateCar(Car car) {
+        retiredCars.remove(car);
+        retirements.incrementAndGet();
+        releaseCar(car);
+    }
+
+    private static Car newCar(String carId, String brand, String model, double basePricePerDay) {
+        if (isBlank(carId) || isBlank(brand) || isBlank(model)) {
+            throw new IllegalArgumentException("Car ID, brand and model are required.");
+        }
+        if (basePricePerDay <= 0) {
+            throw new IllegalArgumentException("Please enter a valid price.");
+        }
+        return new Car(carId.trim(), brand.trim(), model.trim(), basePricePerDay);
+    }
+
+    private static void checkDays(int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("Please enter a valid number of days.");
+        }
+        if (days > MAX_RENTAL_DAYS) {
+            throw new IllegalArgumentException("A booking can last at most " + MAX_RENTAL_DAYS + " days.");
+        }
+    }
+
+    private static void checkRecord(RentalRecord record) {
+        if (isBlank(record.getCustomerName())) {
+            throw new IllegalArgumentException("Please enter the customer name.");
+        }
+        checkDays(record.getDays());
+        if (record.getRentalDate() == null) {
+            throw new IllegalArgumentException("The rental date is required.");
+        }
+        if (record.getTotalPrice() < 0) {
+            throw new IllegalArgumentException("Please enter a valid price.");
+        }
+        if (record.getReturnDate() != null && record.getReturnDate().isBefore(record.getRentalDate())) {
+            throw new IllegalArgumentException("The return date cannot be before the rental date.");
+        }
+    }
+
+    // Journals and stores one imported rental, leaving the search index to the caller, and
+    // puts its ordinal at ordinals[slot]. An open rental's customer is registered only once
+    // its car is held.
+    private Rental importRental(RentalRecord record, int[] ordinals, int slot) {
+        checkRecord(record);
+        Car car = requireCar(record.getCarId());
+        RentalJournal current = journal;
+        long sequence;
+        Rental rental;
+        if (record.getReturnDate() != null) {
+            CustomerRegistry.Registration customer = newCustomer(record.getCustomerName(), record.getPhoneNumber());
+            rental = newRental(car, record, customer.getCustomer());
+            rental.markAsReturned(record.getReturnDate());
+            checkpointCut.readLock().lock();
+            try {
+                try {
+                    sequence = current == null ? 0 : current.logImported(rental);
+                } catch (RuntimeException e) {
+                    customer.undo();
+                    throw e;
+                }
+                ordinals[slot] = storeRental(rental);
+            } finally {
+                checkpointCut.readLock().unlock();
+            }
+            committed(sequence);
+            return rental;
+        }
+        if (!claimCar(car)) {
+            throw new IllegalStateException("Car " + car.getCarId() + " is not available.");
+        }
+        LocalDate start = record.getRentalDate().toLocalDate();
+        Object placeholder = new Object();
+        if (!calendar.claim(car, start, start.plusDays(record.getDays()), placeholder)) {
+            releaseCar(car);
+            throw new IllegalStateException("Car " + car.getCarId() + " is reserved within the rental's days.");
+        }
+        CustomerRegistry.Registration customer = newCustomer(record.getCustomerName(), record.getPhoneNumber());
+        rental = newRental(car, record, customer.getCustomer());
+        calendar.rebind(car, start, placeholder, rental);
+        checkpointCut.readLock().lock();
+        try {
+            try {
+                sequence = current == null ? 0 : current.logRented(rental);
+            } catch (RuntimeException e) {
+                calendar.release(car, start, rental);
+                releaseCar(car);
+                customer.undo();
+                throw e;
+            }
+            ordinals[slot] = storeRental(rental);
+        } finally {
+            checkpointCut.readLock().unlock();
+        }
+        committed(sequence);
+        return rental;
+    }
+
+    private Rental newRental(Car car, RentalRecord record, Customer customer) {
+        return new Rental(car, customer, record.getDays(),
+            record.getRentalDate(), record.getTotalPrice());
+    }
+
+    private ReentrantLock returnLock(Car car) {
+        return returnLocks[returnStripe(car)];
+    }
+
+    private int returnStripe(Car car) {
+        int hash = car.getCarId().hashCode();
+        return (hash ^ (hash >>> 16)) & (returnLocks.length - 1);
+    }
+
+    // Every change to a car's availability goes through these two, so the fleet index follows it
+    private boolean claimCar(Car car) {
+        if (!car.tryRent()) return false;
+        fleet.availabilityChanged(car);
+        return true;
+    }
+
+    private void releaseCar(Car car) {
+        car.returnCar();
+        fleet.availabilityChanged(car);
+    }
+
+    private void recordRental(Rental rental) {
+        searchIndex.add(storeRental(rental), rental);
+    }
+
+    // Everything recordRental does except the search index; returns the rental's ordinal
+    private int storeRental(Rental rental) {
+        int ordinal;
+        if (rental.isReturned()) {
+            ordinal = rentals.addReturned(rental);
+        } else {
+            ordinal = rentals.add(rental);
+            pricing.carRented(rental.getCar());
+            dueTimes.schedule(rental, rental.getDueDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        statistics.rentalStarted(rental);
+        timeIndex.add(ordinal, rental);
+        return ordinal;
+    }
+
+    private Rental closeRental(Car car, LocalDateTime returnDate) {
+        Rental rental = rentals.close(car, returnDate);
+        if (rental != null) {
+            dueTimes.cancel(rental);
+            overdueRentals.remove(rental);
+            calendar.releaseHold(car, rental);
+            statistics.rentalReturned(rental);
+            pricing.carReturned(car);
+            calendar.release(car, rental.getRentalDate().toLocalDate(), rental);
+        }
+        return rental;
+    }
+
+    // Waits for the journal (or defers that to the end of the batch), then tells listeners
+    private void committed(long journalSequence) {
+        committed(journalSequence, 1);
+    }
+
+    private void committed(long journalSequence, int records) {
+        if (journalSequence > 0 && recordsSinceCheckpoint.addAndGet(records) >= CHECKPOINT_INTERVAL) {
+            checkpointInBackground();
+        }
+        Batch batch = currentBatch.get();
+        if (batch != null) {
+            batch.changed = true;
+            batch.journalSequence = Math.max(batch.journalSequence, journalSequence);
+        } else {
+            awaitDurable(journalSequence);
+            notifyListeners();
+        }
+    }
+
+    private void awaitDurable(long journalSequence) {
+        RentalJournal current = journal;
+        if (current != null && journalSequence > 0) current.awaitDurable(journalSequence);
+    }
+
+    // The change is committed by now, so a failing listener is logged rather than failing the call
+    private void notifyListeners() {
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                listenerFailures.increment();
+                LOG.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    // Replayed rentals are mostly returned again a few records later, so rather than
+    // booking and releasing each one, the calendar gets the rentals still open at the end
+    private void bookActiveRentals() {
+        for (Rental rental : rentals.active()) {
+            LocalDate start = rental.getRentalDate().toLocalDate();
+            calendar.book(rental.getCar(), start, start.plusDays(rental.getDays()), rental);
+        }
+    }
+
+    // Applies journal records directly, without logging them again
+    private class Replayer implements RentalJournal.Handler {
+        @Override
+        public void carAdded(String carId, String brand, String model, double basePricePerDay) {
+            synchronized (cars) {
+                Car existing = carsById.get(carId);
+                if (existing != null && retiredCars.contains(existing)) {
+                    reinstateCar(existing);
+                } else {
+                    registerCar(new Car(carId, brand, model, basePricePerDay));
+                }
+            }
+        }
+
+        @Override
+        public void carRented(String carId, String customerId, String customerName, String phoneNumber,
+                              int days, LocalDateTime rentalDate, double totalPrice) {
+            Car car = requireCar(carId);
+            car.rent();
+            fleet.availabilityChanged(car);
+            Customer customer = restoreCustomer(customerId, customerName, phoneNumber);
+            recordRental(new Rental(car, customer, days, rentalDate, totalPrice));
+        }
+
+        @Override
+        public void carReturned(String carId, LocalDateTime returnDate) {
+            Car car = requireCar(carId);
+            if (closeRental(car, returnDate) == null) {
+                throw new IllegalStateException("Journal returns car " + carId + " which is not rented.");
+            }
+            releaseCar(car);
+        }
+
+        @Override
+        public void carReserved(String reservationId, String carId, String customerId, String customerName,
+                                String phoneNumber, LocalDate startDate, LocalDate endDate, double totalPrice) {
+            Car car = requireCar(carId);
+            Customer customer = restoreCustomer(customerId, customerName, phoneNumber);
+            Reservation reservation = new Reservation(reservationId, car, customer, startDate, endDate, totalPrice);
+            calendar.book(car, startDate, endDate, reservation);
+            openReservation(reservation);
+            restoreSequence(reservationSequence, "RES", reservationId);
+        }
+
+        @Override
+        public void reservationCancelled(String reservationId) {
+            Reservation reservation = removeReservation(reservationId);
+            reservationEnds.cancel(reservation);
+            calendar.release(reservation.getCar(), reservation.getStartDate(), reservation);
+        }
+
+        @Override
+        public void reservationStarted(String reservationId, LocalDateTime rentalDate) {
+            Reservation reservation = removeReservation(reservationId);
+            reservationEnds.cancel(reservation);
+            Car car = reservation.getCar();
+            car.rent();
+            fleet.availabilityChanged(car);
+            calendar.release(car, reservation.getStartDate(), reservation);
+            recordRental(rentalFor(reservation, rentalDate));
+        }
+
+        @Override
+        public void rentalImported(String carId, String customerId, String customerName, String phoneNumber,
+                                   int days, LocalDateTime rentalDate, double totalPrice, LocalDateTime returnDate) {
+            Customer customer = restoreCustomer(customerId, customerName, phoneNumber);
+            Rental rental = new Rental(requireCar(carId), customer, days, rentalDate, totalPrice);
+            rental.markAsReturned(returnDate);
+            recordRental(rental);
+        }
+
+        @Override
+        public void carRetired(String carId) {
+            Car car = requireCar(carId);
+            car.rent();
+            fleet.availabilityChanged(car);
+            retiredCars.add(car);
+            retirements.incrementAndGet();
+        }
+    }
+
+    // A returning customer (same phone number) gets their existing record; a booking the
+    // journal refuses undoes the registration
+    private CustomerRegistry.Registration newCustomer(String customerName, String phoneNumber) {
+        return customers.register(customerName, phoneNumber);
+    }
+
+    // Reuses the customer if already loaded, so their rentals share one history
+    private Customer restoreCustomer(String customerId, String customerName, String phoneNumber) {
+        return customers.restore(customerId, customerName, phoneNumber);
+    }
+
+    // Lists the reservation and sets its timer to expire it at its end date
+    private void openReservation(Reservation reservation) {
+        reservationsById.put(reservation.getReservationId(), reservation);
+        reservationEnds.schedule(reservation, reservation.getEndDate().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    private Reservation removeReservation(String reservationId) {
+        Reservation reservation = reservationId == null ? null : reservationsById.remove(reservationId.trim());
+        if (reservation == null) {
+            throw new IllegalArgumentException("No open reservation with ID " + reservationId + ".");
+        }
+        return reservation;
+    }
+
+    // Live and replayed starts build the rental the same way, so replay reproduces it exactly
+    private static Rental rentalFor(Reservation reservation, LocalDateTime rentalDate) {
+        int days = (int) ChronoUnit.DAYS.between(rentalDate.toLocalDate(), reservation.getEndDate());
+        return new Rental(reservation.getCar(), reservation.getCustomer(), days, rentalDate, reservation.getTotalPrice());
+    }
+
+    private static void restoreSequence(AtomicInteger sequence, String prefix, String id) {
+        if (!id.startsWith(prefix)) return;
+        try {
+            int number = Integer.parseInt(id.substring(prefix.length()));
+            sequence.accumulateAndGet(number, Math::max);
+        } catch (NumberFormatException e) {
+            // Not one of ours; the sequence only has to avoid clashing with generated IDs
+        }
+    }
+
+    // Both inputs are ascending
+    private static int[] intersect(int[] first, int[] second) {
+        int[] common = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
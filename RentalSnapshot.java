@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Compact binary image of the fleet, customers and rental history, written and
+// read through memory-mapped windows of the file.
+//
+// snapshot-<n>.snap holds the state produced by every journal segment before
+// n, so a cold start loads it and replays only segments n and later. Files
+// are written under a temporary name and renamed into place, so a snapshot
+// that exists is always complete.
+//
+// Layout: int magic, int version, int cars, int customers, int rentals, then
+// the three tables, then int reservations and the reservation table (from
+// version 2), then int retired cars and their car table positions (from
+// version 3). Rentals and reservations refer to cars and customers by table
+// position.
+//
+// The car table holds retired cars too, since their rentals stay in the history.
+class RentalSnapshot {
+    private static final int MAGIC = 0x52534E50;
+    private static final int VERSION = 3;
+    private static final long WINDOW_BYTES = 64L << 20;
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.snap");
+
+    public static Path path(Path directory, long segment) {
+        return directory.resolve(String.format("snapshot-%010d.snap", segment));
+    }
+
+    // Segment numbers of the snapshots present in the directory, oldest first
+    public static List<Long> snapshots(Path directory) throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.snap")) {
+            for (Path file : files) {
+                Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) found.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    public static void write(Path directory, long segment, List<Car> cars, List<Rental> rentals,
+                             List<Reservation> reservations, Collection<Car> retiredCars) throws IOException {
+        Map<Car, Integer> carIndex = new IdentityHashMap<>();
+        for (Car car : cars) carIndex.put(car, carIndex.size());
+        Map<Customer, Integer> customerIndex = new IdentityHashMap<>();
+        List<Customer> customers = new ArrayList<>();
+        for (Rental rental : rentals) {
+            if (customerIndex.putIfAbsent(rental.getCustomer(), customers.size()) == null) {
+                customers.add(rental.getCustomer());
+            }
+        }
+        for (Reservation reservation : reservations) {
+            if (customerIndex.putIfAbsent(reservation.getCustomer(), customers.size()) == null) {
+                customers.add(reservation.getCustomer());
+            }
+        }
+
+        Path temporary = directory.resolve(path(directory, segment).getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(cars.size());
+            out.putInt(customers.size());
+            out.putInt(rentals.size());
+            for (Car car : cars) {
+                out.putString(car.getCarId());
+                out.putString(car.getBrand());
+                out.putString(car.getModel());
+                out.putDouble(car.getBasePricePerDay());
+            }
+            for (Customer customer : customers) {
+                out.putString(customer.getCustomerId());
+                out.putString(customer.getName());
+                out.putString(customer.getPhoneNumber());
+            }
+            for (Rental rental : rentals) {
+                out.putInt(carIndex.get(rental.getCar()));
+                out.putInt(customerIndex.get(rental.getCustomer()));
+                out.putInt(rental.getDays());
+                out.putDateTime(rental.getRentalDate());
+                out.putDouble(rental.getTotalPrice());
+                LocalDateTime returnDate = rental.isReturned() ? rental.getReturnDate() : null;
+                out.putByte(returnDate == null ? (byte) 0 : (byte) 1);
+                if (returnDate != null) out.putDateTime(returnDate);
+            }
+            out.putInt(reservations.size());
+            for (Reservation reservation : reservations) {
+                out.putString(reservation.getReservationId());
+                out.putInt(carIndex.get(reservation.getCar()));
+                out.putInt(customerIndex.get(reservation.getCustomer()));
+                out.putLong(reservation.getStartDate().toEpochDay());
+                out.putLong(reservation.getEndDate().toEpochDay());
+                out.putDouble(reservation.getTotalPrice());
+            }
+            out.putInt(retiredCars.size());
+            for (Car car : retiredCars) {
+                out.putInt(carIndex.get(car));
+            }
+            out.finish();
+        }
+        Files.move(temporary, path(directory, segment), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Feeds the snapshot to the handler as if it were the journal that produced it, except
+    // that returned rentals arrive as single rentalImported calls
+    public static void read(Path file, RentalJournal.Handler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a rental snapshot.");
+            }
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(file + " has unsupported snapshot version " + version + ".");
+            }
+            String[] carIds = new String[in.getInt()];
+            String[][] customers = new String[in.getInt()][];
+            int rentalCount = in.getInt();
+            for (int i = 0; i < carIds.length; i++) {
+                carIds[i] = in.getString();
+                handler.carAdded(carIds[i], in.getSharedString(), in.getSharedString(), in.getDouble());
+            }
+            for (int i = 0; i < customers.length; i++) {
+                customers[i] = new String[] { in.getString(), in.getString(), in.getString() };
+            }
+            for (int i = 0; i < rentalCount; i++) {
+                String carId = carIds[in.getInt()];
+                String[] customer = customers[in.getInt()];
+                int days = in.getInt();
+                LocalDateTime rentalDate = in.getDateTime();
+                double totalPrice = in.getDouble();
+                if (in.getByte() != 0) {
+                    handler.rentalImported(carId, customer[0], customer[1], customer[2], days, rentalDate,
+                        totalPrice, in.getDateTime());
+                } else {
+                    handler.carRented(carId, customer[0], customer[1], customer[2], days, rentalDate, totalPrice);
+                }
+            }
+            int reservationCount = version >= 2 ? in.getInt() : 0;
+            for (int i = 0; i < reservationCount; i++) {
+                String reservationId = in.getString();
+                String carId = carIds[in.getInt()];
+                String[] customer = customers[in.getInt()];
+                LocalDate startDate = LocalDate.ofEpochDay(in.getLong());
+                LocalDate endDate = LocalDate.ofEpochDay(in.getLong());
+                handler.carReserved(reservationId, carId, customer[0], customer[1], customer[2],
+                    startDate, endDate, in.getDouble());
+            }
+            int retiredCount = version >= 3 ? in.getInt() : 0;
+            for (int i = 0; i < retiredCount; i++) {
+                handler.carRetired(carIds[in.getInt()]);
+            }
+        }
+    }
+
+    // Sequential writer that maps the file one window at a time
+    private static final class Output {
+        private final FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        Output(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_BYTES);
+        }
+
+        void putByte(byte value) throws IOException { ensure(1); window.put(value); }
+        void putInt(int value) throws IOException { ensure(4); window.putInt(value); }
+        void putLong(long value) throws IOException { ensure(8); window.putLong(value); }
+        void putDouble(double value) throws IOException { ensure(8); window.putDouble(value); }
+
+        void putDateTime(LocalDateTime value) throws IOException {
+            ensure(12);
+            window.putLong(value.toEpochSecond(ZoneOffset.UTC));
+            window.putInt(value.getNano());
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            window.putInt(bytes.length);
+            window.put(bytes);
+        }
+
+        // Flushes the mapped pages and trims the file to what was written
+        void finish() throws IOException {
+            long end = windowStart + window.position();
+            window.force();
+            channel.truncate(end);
+            channel.force(true);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) return;
+            window.force();
+            windowStart += window.position();
+            window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW_BYTES, bytes));
+        }
+    }
+
+    private static final class Input {
+        private final FileChannel channel;
+        private final long size;
+        private final Map<String, String> strings = new HashMap<>();
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_BYTES, size));
+        }
+
+        byte getByte() throws IOException { ensure(1); return window.get(); }
+        int getInt() throws IOException { ensure(4); return window.getInt(); }
+        long getLong() throws IOException { ensure(8); return window.getLong(); }
+        double getDouble() throws IOException { ensure(8); return window.getDouble(); }
+
+        LocalDateTime getDateTime() throws IOException {
+            ensure(12);
+            return LocalDateTime.ofEpochSecond(window.getLong(), window.getInt(), ZoneOffset.UTC);
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            ensure(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Brands and models repeat across the fleet, so equal strings share one instance
+        String getSharedString() throws IOException {
+            String value = getString();
+            String shared = strings.putIfAbsent(value, value);
+            return shared == null ? value : shared;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) return;
+            long position = windowStart + window.position();
+            if (position + bytes > size) {
+                throw new IOException("Rental snapshot is truncated.");
+            }
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(Math.max(WINDOW_BYTES, bytes), size - windowStart));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+// Point-in-time figures shown in the statistics bar
+class RentalStatistics {
+    private final int totalRentals;
+    private final int activeRentals;
+    private final double totalRevenue;
+
+    public RentalStatistics(int totalRentals, int activeRentals, double totalRevenue) {
+        this.totalRentals = totalRentals;
+        this.activeRentals = activeRentals;
+        this.totalRevenue = totalRevenue;
+    }
+
+    public int getTotalRentals() { return totalRentals; }
+    public int getActiveRentals() { return activeRentals; }
+    public double getTotalRevenue() { return totalRevenue; }
+}
@@ -0,0 +1,80 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals updated in O(1) as rentals start and end, so reading the
+// statistics never walks the rental history. Counters are LongAdders: writers
+// on different threads do not contend and readers never take a lock.
+//
+// Revenue is kept in whole paise to avoid drifting double sums. Per-day
+// figures are keyed by the day the rental started.
+class RentalStatisticsAggregator {
+    private final LongAdder totalRentals = new LongAdder();
+    private final LongAdder activeRentals = new LongAdder();
+    private final LongAdder revenuePaise = new LongAdder();
+    private final Map<String, Totals> byBrand = new ConcurrentHashMap<>();
+    private final Map<LocalDate, Totals> byDay = new ConcurrentHashMap<>();
+
+    private static class Totals {
+        final LongAdder rentals = new LongAdder();
+        final LongAdder revenuePaise = new LongAdder();
+
+        void add(long paise) {
+            rentals.increment();
+            revenuePaise.add(paise);
+        }
+    }
+
+    public void rentalStarted(Rental rental) {
+        long paise = toPaise(rental.getTotalPrice());
+        totalRentals.increment();
+        if (!rental.isReturned()) activeRentals.increment();
+        revenuePaise.add(paise);
+        byBrand.computeIfAbsent(rental.getCar().getBrand(), brand -> new Totals()).add(paise);
+        byDay.computeIfAbsent(rental.getRentalDate().toLocalDate(), day -> new Totals()).add(paise);
+    }
+
+    public void rentalReturned(Rental rental) {
+        activeRentals.decrement();
+    }
+
+    public RentalStatistics snapshot() {
+        return new RentalStatistics(totalRentals.intValue(), activeRentals.intValue(), fromPaise(revenuePaise.sum()));
+    }
+
+    public Map<String, Double> getRevenueByBrand() {
+        Map<String, Double> revenue = new TreeMap<>();
+        byBrand.forEach((brand, totals) -> revenue.put(brand, fromPaise(totals.revenuePaise.sum())));
+        return Collections.unmodifiableMap(revenue);
+    }
+
+    public Map<String, Long> getRentalsByBrand() {
+        Map<String, Long> rentals = new TreeMap<>();
+        byBrand.forEach((brand, totals) -> rentals.put(brand, totals.rentals.sum()));
+        return Collections.unmodifiableMap(rentals);
+    }
+
+    public SortedMap<LocalDate, Double> getRevenueByDay() {
+        SortedMap<LocalDate, Double> revenue = new TreeMap<>();
+        byDay.forEach((day, totals) -> revenue.put(day, fromPaise(totals.revenuePaise.sum())));
+        return Collections.unmodifiableSortedMap(revenue);
+    }
+
+    public SortedMap<LocalDate, Long> getRentalsByDay() {
+        SortedMap<LocalDate, Long> rentals = new TreeMap<>();
+        byDay.forEach((day, totals) -> rentals.put(day, totals.rentals.sum()));
+        return Collections.unmodifiableSortedMap(rentals);
+    }
+
+    static long toPaise(double rupees) {
+        return Math.round(rupees * 100);
+    }
+
+    static double fromPaise(long paise) {
+        return paise / 100.0;
+    }
+}
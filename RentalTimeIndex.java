@@ -0,0 +1,77 @@
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Rental ordinals bucketed by the day the rental started. A date-range query
+// walks only the buckets inside the range and checks exact times in the two
+// edge buckets, instead of computing a date difference for every rental.
+class RentalTimeIndex {
+    private final RentalRepository rentals;
+    private final ConcurrentSkipListMap<Long, Bucket> days = new ConcurrentSkipListMap<>();
+
+    private static final class Bucket {
+        private int[] ordinals = new int[8];
+        private int size;
+
+        synchronized void add(int ordinal) {
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            int at = size;
+            while (at > 0 && ordinals[at - 1] > ordinal) at--;
+            System.arraycopy(ordinals, at, ordinals, at + 1, size - at);
+            ordinals[at] = ordinal;
+            size++;
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(ordinals, size);
+        }
+    }
+
+    public RentalTimeIndex(RentalRepository rentals) {
+        this.rentals = rentals;
+    }
+
+    public void add(int ordinal, Rental rental) {
+        days.computeIfAbsent(epochDay(rental.getRentalDate()), day -> new Bucket()).add(ordinal);
+    }
+
+    // Ordinals of rentals started in [from, to), ascending. Either bound may be null for an open range.
+    public int[] between(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) return new int[0];
+        Long firstDay = from == null ? null : epochDay(from);
+        Long lastDay = to == null ? null : epochDay(to);
+        int[] result = new int[64];
+        int count = 0;
+        boolean sorted = true;
+        for (Map.Entry<Long, Bucket> entry : range(firstDay, lastDay).entrySet()) {
+            long day = entry.getKey();
+            boolean edge = (firstDay != null && day == firstDay) || (lastDay != null && day == lastDay);
+            for (int ordinal : entry.getValue().toArray()) {
+                if (edge && !within(rentals.rentalDateAt(ordinal), from, to)) continue;
+                if (count == result.length) result = Arrays.copyOf(result, count * 2);
+                if (count > 0 && result[count - 1] > ordinal) sorted = false;
+                result[count++] = ordinal;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        if (!sorted) Arrays.sort(result);
+        return result;
+    }
+
+    private NavigableMap<Long, Bucket> range(Long firstDay, Long lastDay) {
+        if (firstDay == null && lastDay == null) return days;
+        if (firstDay == null) return days.headMap(lastDay, true);
+        if (lastDay == null) return days.tailMap(firstDay, true);
+        return days.subMap(firstDay, true, lastDay, true);
+    }
+
+    private static boolean within(LocalDateTime time, LocalDateTime from, LocalDateTime to) {
+        return (from == null || !time.isBefore(from)) && (to == null || time.isBefore(to));
+    }
+
+    private static long epochDay(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay();
+    }
+}
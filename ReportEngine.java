@@ -0,0 +1,255 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Builds RentalReports with fork-join over the rental history. The history is
+// split into ordinal ranges; each leaf scans its range straight from the
+// repository's columns into primitive per-car and per-day totals, and the
+// partial totals are merged pairwise on the way back up.
+//
+// Reports run on the engine's own pool and read the repository without
+// locking, so bookings never wait for them. A report covers the rentals
+// published when it started. Utilization is measured over the window from
+// the first rental in the history to the time the report started.
+class ReportEngine {
+    private static final int TOP_CUSTOMERS = 10;
+    private static final int MIN_LEAF_RENTALS = 1 << 15;
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    private final RentalRepository rentals;
+    private final ForkJoinPool pool;
+
+    public ReportEngine(RentalRepository rentals) {
+        this(rentals, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReportEngine(RentalRepository rentals, int parallelism) {
+        this.rentals = rentals;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    // The cars must include every car that has been rented, in the order to report them
+    public CompletableFuture<RentalReport> generate(List<Car> cars, LocalDateTime now) {
+        return CompletableFuture.supplyAsync(() -> build(cars, now), pool);
+    }
+
+    private RentalReport build(List<Car> cars, LocalDateTime now) {
+        Map<Car, Integer> carIndex = new IdentityHashMap<>(cars.size() * 2);
+        for (Car car : cars) carIndex.put(car, carIndex.size());
+        int count = rentals.size();
+        int leafRentals = Math.max(MIN_LEAF_RENTALS, count / (pool.getParallelism() * 8) + 1);
+        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        Totals totals = new Scan(rentals, carIndex, nowSecond, leafRentals, 0, count).invoke();
+
+        Map<String, Long> brandPaise = new TreeMap<>();
+        Map<String, Long> modelPaise = new TreeMap<>();
+        Map<Car, Double> utilization = new LinkedHashMap<>();
+        double window = Math.max(1, nowSecond - Math.min(totals.firstSecond, nowSecond));
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            brandPaise.merge(car.getBrand(), totals.carPaise[i], Long::sum);
+            modelPaise.merge(car.getBrand() + " " + car.getModel(), totals.carPaise[i], Long::sum);
+            utilization.put(car, Math.min(1.0, totals.carRentedSeconds[i] / window));
+        }
+        SortedMap<LocalDate, Double> revenueByDay = new TreeMap<>();
+        for (int i = 0; i < totals.dayPaise.length; i++) {
+            if (totals.dayRentals[i] > 0) {
+                revenueByDay.put(LocalDate.ofEpochDay(totals.firstDay + i), RentalStatisticsAggregator.fromPaise(totals.dayPaise[i]));
+            }
+        }
+        return new RentalReport((int) totals.rentals, RentalStatisticsAggregator.fromPaise(totals.paise),
+            totals.rentals == 0 ? 0 : (double) totals.days / totals.rentals,
+            rupees(brandPaise), rupees(modelPaise), revenueByDay, utilization, topCustomers(totals.customers));
+    }
+
+    private static Map<String, Double> rupees(Map<String, Long> paise) {
+        Map<String, Double> rupees = new TreeMap<>();
+        paise.forEach((key, value) -> rupees.put(key, RentalStatisticsAggregator.fromPaise(value)));
+        return rupees;
+    }
+
+    private static List<RentalReport.CustomerTotal> topCustomers(Map<String, CustomerSum> customers) {
+        Comparator<CustomerSum> byRevenue = Comparator.comparingLong(sum -> sum.paise);
+        PriorityQueue<CustomerSum> top = new PriorityQueue<>(byRevenue);
+        for (CustomerSum sum : customers.values()) {
+            if (top.size() < TOP_CUSTOMERS) {
+                top.add(sum);
+            } else if (sum.paise > top.peek().paise) {
+                top.poll();
+                top.add(sum);
+            }
+        }
+        List<CustomerSum> ranked = new ArrayList<>(top);
+        ranked.sort(byRevenue.reversed());
+        List<RentalReport.CustomerTotal> result = new ArrayList<>(ranked.size());
+        for (CustomerSum sum : ranked) {
+            result.add(new RentalReport.CustomerTotal(sum.name, sum.phoneNumber, (int) sum.rentals,
+                RentalStatisticsAggregator.fromPaise(sum.paise)));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Scan extends RecursiveTask<Totals> {
+        private final RentalRepository rentals;
+        private final Map<Car, Integer> carIndex;
+        private final long nowSecond;
+        private final int leafRentals;
+        private final int from;
+        private final int to;
+
+        Scan(RentalRepository rentals, Map<Car, Integer> carIndex, long nowSecond, int leafRentals, int from, int to) {
+            this.rentals = rentals;
+            this.carIndex = carIndex;
+            this.nowSecond = nowSecond;
+            this.leafRentals = leafRentals;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= leafRentals) {
+                Totals totals = new Totals(carIndex, nowSecond);
+                rentals.scan(from, to, totals);
+                return totals;
+            }
+            int middle = (from + to) >>> 1;
+            Scan left = new Scan(rentals, carIndex, nowSecond, leafRentals, from, middle);
+            left.fork();
+            Totals right = new Scan(rentals, carIndex, nowSecond, leafRentals, middle, to).compute();
+            Totals merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    private static final class CustomerSum {
+        final String name;
+        final String phoneNumber;
+        long rentals;
+        long paise;
+
+        CustomerSum(String name, String phoneNumber) {
+            this.name = name;
+            this.phoneNumber = phoneNumber;
+        }
+    }
+
+    // One range's totals; per-car figures are indexed by the car's position in the report's car list
+    private static final class Totals implements RentalRepository.Visitor {
+        private final Map<Car, Integer> carIndex;
+        private final long nowSecond;
+        final long[] carPaise;
+        final long[] carRentedSeconds;
+        long rentals;
+        long paise;
+        long days;
+        long firstSecond = Long.MAX_VALUE;
+        // Per-day figures for the days from firstDay on, grown in either direction as needed
+        long firstDay;
+        long[] dayPaise = new long[0];
+        long[] dayRentals = new long[0];
+        final Map<String, CustomerSum> customers = new HashMap<>();
+
+        Totals(Map<Car, Integer> carIndex, long nowSecond) {
+            this.carIndex = carIndex;
+            this.nowSecond = nowSecond;
+            this.carPaise = new long[carIndex.size()];
+            this.carRentedSeconds = new long[carIndex.size()];
+        }
+
+        @Override
+        public void visit(Car car, Customer customer, int days, long rentalSecond, long returnSecond, long pricePaise) {
+            rentals++;
+            paise += pricePaise;
+            this.days += days;
+            firstSecond = Math.min(firstSecond, rentalSecond);
+            Integer index = carIndex.get(car);
+            if (index != null) {
+                carPaise[index] += pricePaise;
+                long end = returnSecond == RentalRepository.OPEN ? nowSecond : Math.min(returnSecond, nowSecond);
+                carRentedSeconds[index] += Math.max(0, end - rentalSecond);
+            }
+            int day = dayIndex(Math.floorDiv(rentalSecond, SECONDS_PER_DAY));
+            dayPaise[day] += pricePaise;
+            dayRentals[day]++;
+            String phoneNumber = customer.getPhoneNumber();
+            String key = phoneNumber.isEmpty() ? customer.getName() : phoneNumber;
+            CustomerSum sum = customers.get(key);
+            if (sum == null) {
+                sum = new CustomerSum(customer.getName(), phoneNumber);
+                customers.put(key, sum);
+            }
+            sum.rentals++;
+            sum.paise += pricePaise;
+        }
+
+        void merge(Totals other) {
+            rentals += other.rentals;
+            paise += other.paise;
+            days += other.days;
+            firstSecond = Math.min(firstSecond, other.firstSecond);
+            for (int i = 0; i < carPaise.length; i++) {
+                carPaise[i] += other.carPaise[i];
+                carRentedSeconds[i] += other.carRentedSeconds[i];
+            }
+            if (other.dayPaise.length > 0) {
+                dayIndex(other.firstDay);
+                dayIndex(other.firstDay + other.dayPaise.length - 1);
+                int offset = (int) (other.firstDay - firstDay);
+                for (int i = 0; i < other.dayPaise.length; i++) {
+                    dayPaise[offset + i] += other.dayPaise[i];
+                    dayRentals[offset + i] += other.dayRentals[i];
+                }
+            }
+            for (CustomerSum sum : other.customers.values()) {
+                String key = sum.phoneNumber.isEmpty() ? sum.name : sum.phoneNumber;
+                CustomerSum mine = customers.putIfAbsent(key, sum);
+                if (mine != null) {
+                    mine.rentals += sum.rentals;
+                    mine.paise += sum.paise;
+                }
+            }
+        }
+
+        // Position of the day in the per-day arrays, growing them to cover it
+        private int dayIndex(long day) {
+            if (dayPaise.length == 0) {
+                firstDay = day;
+                dayPaise = new long[32];
+                dayRentals = new long[32];
+            } else if (day < firstDay) {
+                int shift = (int) (firstDay - day) + 32;
+                dayPaise = shifted(dayPaise, shift);
+                dayRentals = shifted(dayRentals, shift);
+                firstDay -= shift;
+            } else if (day - firstDay >= dayPaise.length) {
+                int length = (int) Math.max(dayPaise.length * 2L, day - firstDay + 32);
+                dayPaise = Arrays.copyOf(dayPaise, length);
+                dayRentals = Arrays.copyOf(dayRentals, length);
+            }
+            return (int) (day - firstDay);
+        }
+
+        private static long[] shifted(long[] values, int shift) {
+            long[] grown = new long[values.length + shift];
+            System.arraycopy(values, 0, grown, shift, values.length);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+// A car held for a customer from startDate up to (not including) endDate,
+// priced when it was made
+class Reservation {
+    private final String reservationId;
+    private final Car car;
+    private final Customer customer;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final double totalPrice;
+
+    public Reservation(String reservationId, Car car, Customer customer, LocalDate startDate, LocalDate endDate, double totalPrice) {
+        this.reservationId = reservationId;
+        this.car = car;
+        this.customer = customer;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.totalPrice = totalPrice;
+    }
+
+    public String getReservationId() { return reservationId; }
+    public Car getCar() { return car; }
+    public Customer getCustomer() { return customer; }
+    public LocalDate getStartDate() { return startDate; }
+    public LocalDate getEndDate() { return endDate; }
+    public int getDays() { return (int) ChronoUnit.DAYS.between(startDate, endDate); }
+    public double getTotalPrice() { return totalPrice; }
+
+    public String toString() {
+        return reservationId + " - " + car.getCarId() + " for " + customer.getName()
+            + " (" + startDate + " to " + endDate.minusDays(1) + ")";
+    }
+}
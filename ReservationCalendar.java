@@ -0,0 +1,288 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// The days each car is booked, by reservations and by open rentals, as
+// half-open [start, end) ranges of epoch days.
+//
+// Each car keeps its bookings in a TreeMap keyed by start day. Bookings of one
+// car never overlap, so a new range collides only with its floor or ceiling
+// entry and the overlap check is O(log n). Alongside, every booked day has a
+// BitSet of the cars booked on it; the cars free over a range are the
+// complement of the OR of the day sets inside it.
+//
+// A rental kept past its due date holds its car from the due day with no
+// end until it comes back. Holds live beside the bookings, in a day-keyed map
+// of the cars held from each day; a claim overlapping a hold fails, and
+// freeCars treats a held car as booked on every day from the hold on.
+//
+// Cars are spread over lock stripes by their position in the fleet, and each
+// stripe owns the bookings and the day sets of its own cars. A claim locks
+// only its car's stripe, so bookings of cars in different stripes never wait
+// on each other; freeCars reads the stripes one after another.
+//
+// The version grows after every change to the bookings or the fleet, for
+// callers caching what they read from the calendar.
+class ReservationCalendar {
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Map<Car, CarBookings> byCar = new ConcurrentHashMap<>();
+    // Replaced whole under the fleet lock, so readers see a complete fleet
+    private volatile Car[] fleet = new Car[0];
+    private final Object fleetLock = new Object();
+    private final AtomicLong version = new AtomicLong();
+
+    private static final class Stripe {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Bit n is the stripe's nth car, the car at STRIPES * n + stripe in the fleet
+        final TreeMap<Long, BitSet> bookedByDay = new TreeMap<>();
+        final TreeMap<Long, BitSet> heldFromDay = new TreeMap<>();
+    }
+
+    private static final class CarBookings {
+        final Stripe stripe;
+        final int slot;
+        final TreeMap<Long, Booking> bookings = new TreeMap<>();
+        long heldFrom = Long.MAX_VALUE;
+        Object holdHolder;
+
+        CarBookings(Stripe stripe, int slot) {
+            this.stripe = stripe;
+            this.slot = slot;
+        }
+
+        boolean isFree(long startDay, long endDay) {
+            if (heldFrom < endDay) return false;
+            Map.Entry<Long, Booking> before = bookings.floorEntry(startDay);
+            if (before != null && before.getValue().endDay > startDay) return false;
+            Map.Entry<Long, Booking> after = bookings.ceilingEntry(startDay);
+            return after == null || after.getKey() >= endDay;
+        }
+    }
+
+    private static final class Booking {
+        final long endDay;
+        final Object holder;
+
+        Booking(long endDay, Object holder) {
+            this.endDay = endDay;
+            this.holder = holder;
+        }
+    }
+
+    public ReservationCalendar() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    public void carAdded(Car car) {
+        carsAdded(List.of(car));
+    }
+
+    public void carsAdded(List<Car> added) {
+        synchronized (fleetLock) {
+            Car[] grown = Arrays.copyOf(fleet, fleet.length + added.size());
+            for (int i = 0; i < added.size(); i++) {
+                int ordinal = fleet.length + i;
+                grown[ordinal] = added.get(i);
+                byCar.put(added.get(i), new CarBookings(stripes[ordinal % STRIPES], ordinal / STRIPES));
+            }
+            fleet = grown;
+            version.incrementAndGet();
+        }
+    }
+
+    // Books [start, end) for the holder (a Reservation or Rental) unless the car is already booked then
+    public boolean claim(Car car, LocalDate start, LocalDate end, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            if (!schedule.isFree(start.toEpochDay(), end.toEpochDay())) return false;
+            add(schedule, start.toEpochDay(), end.toEpochDay(), holder);
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    // Books without the overlap check, for history replayed from the journal
+    public void book(Car car, LocalDate start, LocalDate end, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            add(schedule, start.toEpochDay(), end.toEpochDay(), holder);
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+    }
+
+    public void release(Car car, LocalDate start, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        boolean removed;
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            removed = remove(schedule, start.toEpochDay(), holder);
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+        if (removed) version.incrementAndGet();
+    }
+
+    // Swaps one booking of the car for another in one step; false (and nothing changed) on overlap
+    public boolean replace(Car car, LocalDate oldStart, Object oldHolder, LocalDate start, LocalDate end, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            Booking old = schedule.bookings.get(oldStart.toEpochDay());
+            if (old == null || old.holder != oldHolder) return false;
+            remove(schedule, oldStart.toEpochDay(), oldHolder);
+            if (!schedule.isFree(start.toEpochDay(), end.toEpochDay())) {
+                add(schedule, oldStart.toEpochDay(), old.endDay, oldHolder);
+                return false;
+            }
+            add(schedule, start.toEpochDay(), end.toEpochDay(), holder);
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    // Hands the car's booking starting on the day from one holder to another, as when a
+    // booking made under a placeholder gets its rental; false if the old holder has none
+    public boolean rebind(Car car, LocalDate start, Object oldHolder, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            Booking booking = schedule.bookings.get(start.toEpochDay());
+            if (booking == null || booking.holder != oldHolder) return false;
+            schedule.bookings.put(start.toEpochDay(), new Booking(booking.endDay, holder));
+            return true;
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+    }
+
+    // Books the car from the day on with no end, for the holder (an overdue Rental), until
+    // releaseHold. Replaces any hold the car already has.
+    public void holdFrom(Car car, LocalDate from, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            removeHold(schedule);
+            schedule.heldFrom = from.toEpochDay();
+            schedule.holdHolder = holder;
+            schedule.stripe.heldFromDay.computeIfAbsent(schedule.heldFrom, key -> new BitSet()).set(schedule.slot);
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+    }
+
+    // Ends the car's hold if the holder still has it
+    public void releaseHold(Car car, Object holder) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.writeLock().lock();
+        try {
+            if (schedule.holdHolder != holder || holder == null) return;
+            removeHold(schedule);
+        } finally {
+            schedule.stripe.lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public boolean isFree(Car car, LocalDate start, LocalDate end) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.readLock().lock();
+        try {
+            return schedule.isFree(start.toEpochDay(), end.toEpochDay());
+        } finally {
+            schedule.stripe.lock.readLock().unlock();
+        }
+    }
+
+    // Whether the car is booked for the day or any day after it
+    public boolean isBookedFrom(Car car, LocalDate day) {
+        CarBookings schedule = byCar.get(car);
+        schedule.stripe.lock.readLock().lock();
+        try {
+            if (schedule.holdHolder != null) return true;
+            Map.Entry<Long, Booking> last = schedule.bookings.lastEntry();
+            return last != null && last.getValue().endDay > day.toEpochDay();
+        } finally {
+            schedule.stripe.lock.readLock().unlock();
+        }
+    }
+
+    // Cars with no booking on any day in [start, end), in fleet order
+    public List<Car> freeCars(LocalDate start, LocalDate end) {
+        Car[] cars = fleet;
+        BitSet[] booked = new BitSet[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            Stripe stripe = stripes[i];
+            booked[i] = new BitSet();
+            stripe.lock.readLock().lock();
+            try {
+                for (BitSet day : stripe.bookedByDay.subMap(start.toEpochDay(), end.toEpochDay()).values()) {
+                    booked[i].or(day);
+                }
+                for (BitSet held : stripe.heldFromDay.headMap(end.toEpochDay()).values()) {
+                    booked[i].or(held);
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        List<Car> free = new ArrayList<>();
+        for (int ordinal = 0; ordinal < cars.length; ordinal++) {
+            if (!booked[ordinal % STRIPES].get(ordinal / STRIPES)) free.add(cars[ordinal]);
+        }
+        return free;
+    }
+
+    // Called with the stripe's write lock held
+    private void add(CarBookings schedule, long startDay, long endDay, Object holder) {
+        schedule.bookings.put(startDay, new Booking(endDay, holder));
+        for (long day = startDay; day < endDay; day++) {
+            schedule.stripe.bookedByDay.computeIfAbsent(day, key -> new BitSet()).set(schedule.slot);
+        }
+    }
+
+    // Called with the stripe's write lock held
+    private boolean remove(CarBookings schedule, long startDay, Object holder) {
+        Booking booking = schedule.bookings.get(startDay);
+        if (booking == null || booking.holder != holder) return false;
+        schedule.bookings.remove(startDay);
+        for (long day = startDay; day < booking.endDay; day++) {
+            BitSet booked = schedule.stripe.bookedByDay.get(day);
+            if (booked == null) continue;
+            booked.clear(schedule.slot);
+            if (booked.isEmpty()) schedule.stripe.bookedByDay.remove(day);
+        }
+        return true;
+    }
+
+    // Called with the stripe's write lock held
+    private void removeHold(CarBookings schedule) {
+        if (schedule.holdHolder == null) return;
+        BitSet held = schedule.stripe.heldFromDay.get(schedule.heldFrom);
+        held.clear(schedule.slot);
+        if (held.isEmpty()) schedule.stripe.heldFromDay.remove(schedule.heldFrom);
+        schedule.heldFrom = Long.MAX_VALUE;
+        schedule.holdHolder = null;
+    }
+}
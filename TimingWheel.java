@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Timers for items due at a wall-clock time, in a hierarchical timing wheel.
+//
+// Time is cut into ticks. Level 0 has a slot per tick for the current block
+// of 64 ticks, level 1 a slot per 64 ticks for the current block of 64 x 64,
+// and so on for four levels (about 32 years at one-minute ticks; anything
+// further out waits in an overflow list). A timer sits in the slot of the
+// lowest level whose block contains both it and the current tick. Each time
+// the current tick enters a new block, the one slot above that block is
+// emptied down into the levels below. Scheduling, cancelling and firing are
+// O(1) per timer (cascading moves a timer down at most once per level) whatever the
+// number of timers, and nothing ever scans them all.
+//
+// Slots are circular doubly-linked lists with a sentinel node, and every item
+// maps to its node, so a cancel unlinks it in place. Timers fire once the
+// clock has reached their tick, never before their due time, at most one tick
+// late. All methods are synchronized; each one does O(1) work per timer it
+// touches.
+class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Node<T>[][] levels;
+    private final Node<T> overflow = new Node<>(null, 0);
+    // Due before the clock when scheduled; fired by the next advance
+    private final Node<T> expired = new Node<>(null, 0);
+    private final Map<T, Node<T>> timers = new HashMap<>();
+    // Every timer due before this tick has fired
+    private long currentTick;
+
+    private static final class Node<T> {
+        final T item;
+        final long tick;
+        Node<T> prev = this;
+        Node<T> next = this;
+
+        Node(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+
+        void append(Node<T> node) {
+            node.prev = prev;
+            node.next = this;
+            prev.next = node;
+            prev = node;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = this;
+        }
+
+        boolean isEmpty() {
+            return next == this;
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick must be positive.");
+        }
+        this.tickMillis = tickMillis;
+        this.levels = new Node[LEVELS][SLOTS];
+        for (Node<T>[] level : levels) {
+            for (int slot = 0; slot < SLOTS; slot++) level[slot] = new Node<>(null, 0);
+        }
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    // Replaces any timer the item already has
+    public synchronized void schedule(T item, long dueMillis) {
+        Node<T> old = timers.remove(item);
+        if (old != null) old.unlink();
+        // Rounded up, so the timer cannot fire before its due time
+        Node<T> node = new Node<>(item, Math.floorDiv(dueMillis - 1, tickMillis) + 1);
+        timers.put(item, node);
+        place(node);
+    }
+
+    public synchronized boolean cancel(T item) {
+        Node<T> node = timers.remove(item);
+        if (node == null) return false;
+        node.unlink();
+        return true;
+    }
+
+    // Moves the clock to now and returns the items that fell due, earliest tick first
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> due = new ArrayList<>();
+        drain(expired, due);
+        long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        if (timers.isEmpty()) {
+            currentTick = Math.max(currentTick, nowTick + 1);
+            return due;
+        }
+        for (; currentTick <= nowTick; currentTick++) {
+            for (int level = LEVELS; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) cascade(level);
+            }
+            drain(levels[0][(int) (currentTick & (SLOTS - 1))], due);
+        }
+        return due;
+    }
+
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    private void place(Node<T> node) {
+        if (node.tick < currentTick) {
+            expired.append(node);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if (node.tick >> shift == currentTick >> shift) {
+                levels[level][(int) ((node.tick >> (SLOT_BITS * level)) & (SLOTS - 1))].append(node);
+                return;
+            }
+        }
+        overflow.append(node);
+    }
+
+    // Empties the slot above the block the clock just entered into the levels below
+    private void cascade(int level) {
+        Node<T> slot = level == LEVELS ? overflow : levels[level][(int) ((currentTick >> (SLOT_BITS * level)) & (SLOTS - 1))];
+        // Detached first, as overflow timers still out of range go back into the same list
+        Node<T> node = slot.next;
+        slot.prev = slot.next = slot;
+        while (node != slot) {
+            Node<T> next = node.next;
+            node.prev = node.next = node;
+            place(node);
+            node = next;
+        }
+    }
+
+    private void drain(Node<T> slot, List<T> due) {
+        while (!slot.isEmpty()) {
+            Node<T> node = slot.next;
+            node.unlink();
+            timers.remove(node.item);
+            due.add(node.item);
+        }
+    }
+}